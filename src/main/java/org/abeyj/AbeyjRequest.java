@@ -1,8 +1,10 @@
 package org.abeyj;
 
+import io.reactivex.Flowable;
 import org.abeyj.common.AddressConstant;
 import org.abeyj.common.Constant;
 import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.ObjectMapperFactory;
 import org.abeyj.protocol.core.DefaultBlockParameter;
 import org.abeyj.protocol.core.DefaultBlockParameterName;
 import org.abeyj.protocol.core.Request;
@@ -20,6 +22,8 @@ import org.abeyj.response.snail.SnailBlock;
 import org.abeyj.response.snail.SnailRewardContenet;
 import org.abeyj.response.staking.AllStakingAccount;
 import org.abeyj.response.staking.StakingAccountInfo;
+import org.abeyj.utils.Numeric;
+import org.abeyj.utils.WeightedLruCache;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
@@ -28,10 +32,34 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AbeyjRequest {
     public AbeyjService abeyjService = null;
 
+    public static final long DEFAULT_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 100_000;
+    public static final int DEFAULT_FAST_FINALITY_DEPTH = 12;
+    public static final int DEFAULT_SNAIL_FINALITY_DEPTH = 12;
+
+    // minimum time between two head lookups made to decide whether a result is final
+    private static final long HEAD_REFRESH_INTERVAL = 1000;
+
+    private volatile WeightedLruCache<String, Object> cache = null;
+    private int fastFinalityDepth = DEFAULT_FAST_FINALITY_DEPTH;
+    private int snailFinalityDepth = DEFAULT_SNAIL_FINALITY_DEPTH;
+
+    // highest numbers known to be final, they only ever grow
+    private final AtomicReference<BigInteger> confirmedFastNumber =
+            new AtomicReference<>(BigInteger.ZERO);
+    private final AtomicReference<BigInteger> confirmedSnailNumber =
+            new AtomicReference<>(BigInteger.ZERO);
+    private final AtomicInteger confirmedCommitteeNumber = new AtomicInteger(0);
+    private volatile long fastHeadCheckedAt = 0;
+    private volatile long snailHeadCheckedAt = 0;
+    private volatile long committeeCheckedAt = 0;
+
     private AbeyjRequest() {
 
     }
@@ -44,6 +72,48 @@ public class AbeyjRequest {
         this.abeyjService = httpService;
     }
 
+    public AbeyjRequest(AbeyjService abeyjService) {
+        this.abeyjService = abeyjService;
+    }
+
+    /**
+     * cache fast blocks, snail blocks, committees and snail rewards once they are final,
+     * using the default size limits and finality depths
+     */
+    public void enableCache() {
+        enableCache(DEFAULT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_BYTES,
+                DEFAULT_FAST_FINALITY_DEPTH, DEFAULT_SNAIL_FINALITY_DEPTH);
+    }
+
+    /**
+     * cache fast blocks, snail blocks, committees and snail rewards once they are final.
+     * a fast (snail) block is final when it is at least fastFinalityDepth (snailFinalityDepth)
+     * blocks below the current head, a committee is final once a newer committee exists.
+     * <p>
+     * attention: cached objects are shared between callers and must not be modified
+     *
+     * @param maxEntries         maximum number of cached results
+     * @param maxBytes           maximum total size of the cached results, measured as JSON
+     * @param fastFinalityDepth  confirmations after which a fast block is final
+     * @param snailFinalityDepth confirmations after which a snail block is final
+     */
+    public void enableCache(int maxEntries, long maxBytes, int fastFinalityDepth, int snailFinalityDepth) {
+        this.fastFinalityDepth = fastFinalityDepth;
+        this.snailFinalityDepth = snailFinalityDepth;
+        this.cache = new WeightedLruCache<>(maxEntries, maxBytes, AbeyjRequest::estimateSize);
+    }
+
+    public void disableCache() {
+        this.cache = null;
+    }
+
+    /**
+     * @return the cache of final results, or null if caching is disabled
+     */
+    public WeightedLruCache<String, Object> getCache() {
+        return cache;
+    }
+
 
     /**
      * query lock balance
@@ -77,7 +147,11 @@ public class AbeyjRequest {
      * @return
      */
     public FastBlock getFastBlockByNumber(BigInteger fastBlockNumber, boolean returnFullTransactionObjects) {
-        FastBlock fastBlock = null;
+        String cacheKey = cacheKey(Constant.BLOCK_BYNUMBER, fastBlockNumber, returnFullTransactionObjects);
+        FastBlock fastBlock = getCached(cacheKey);
+        if (fastBlock != null) {
+            return fastBlock;
+        }
         try {
             AbeyFastBlock abeyFastBlock = new Request<>(
                     Constant.BLOCK_BYNUMBER,
@@ -85,12 +159,29 @@ public class AbeyjRequest {
                     abeyjService,
                     AbeyFastBlock.class).send();
             fastBlock = abeyFastBlock.getFastBlock();
+            if (fastBlock != null && isFinalFastNumber(fastBlockNumber)) {
+                putCached(cacheKey, fastBlock);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return fastBlock;
     }
 
+    /**
+     * fetch fast blocks from and to inclusive in parallel batches, emitted in block order
+     *
+     * @param from        first block number
+     * @param to          last block number
+     * @param parallelism maximum number of batch requests in flight
+     * @param batchSize   number of blocks per batch request
+     * @return
+     * @see BlockRangeFetcher
+     */
+    public Flowable<FastBlock> fetchFastBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize) {
+        return new BlockRangeFetcher(abeyjService).fetchFastBlocks(from, to, parallelism, batchSize);
+    }
+
     /**
      * get FastBlock by hash
      *
@@ -175,6 +266,11 @@ public class AbeyjRequest {
         if (snailNumber == null) {
             return null;
         }
+        String cacheKey = cacheKey(Constant.CHAIN_REWARD_CONTENT, snailNumber);
+        chainRewardContent = getCached(cacheKey);
+        if (chainRewardContent != null) {
+            return chainRewardContent;
+        }
         DefaultBlockParameter blockParameter = DefaultBlockParameter.valueOf(snailNumber);
         try {
             AbeyChainRewardContent abeyChainRewardContent = new Request<>(
@@ -183,6 +279,9 @@ public class AbeyjRequest {
                     abeyjService,
                     AbeyChainRewardContent.class).send();
             chainRewardContent = abeyChainRewardContent.getChainRewardContent();
+            if (chainRewardContent != null && isFinalSnailNumber(snailNumber)) {
+                putCached(cacheKey, chainRewardContent);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -275,7 +374,11 @@ public class AbeyjRequest {
      * @return
      */
     public SnailBlock getSnailBlockByNumber(BigInteger snailNumber, boolean inclFruit) {
-        SnailBlock snailBlock = null;
+        String cacheKey = cacheKey("abey_getSnailBlockByNumber", snailNumber, inclFruit);
+        SnailBlock snailBlock = getCached(cacheKey);
+        if (snailBlock != null) {
+            return snailBlock;
+        }
         try {
             AbeySnailBlock abeySnailBlock = new Request<>(
                     "abey_getSnailBlockByNumber",
@@ -283,12 +386,29 @@ public class AbeyjRequest {
                     abeyjService,
                     AbeySnailBlock.class).send();
             snailBlock = abeySnailBlock.getSnailBlock();
+            if (snailBlock != null && isFinalSnailNumber(snailNumber)) {
+                putCached(cacheKey, snailBlock);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return snailBlock;
     }
 
+    /**
+     * fetch snail blocks from and to inclusive in parallel batches, emitted in block order
+     *
+     * @param from        first snail number
+     * @param to          last snail number
+     * @param parallelism maximum number of batch requests in flight
+     * @param batchSize   number of blocks per batch request
+     * @return
+     * @see BlockRangeFetcher
+     */
+    public Flowable<SnailBlock> fetchSnailBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize) {
+        return new BlockRangeFetcher(abeyjService).fetchSnailBlocks(from, to, parallelism, batchSize);
+    }
+
     /**
      * get snailHash by snailNumber
      *
@@ -318,7 +438,11 @@ public class AbeyjRequest {
      * @return
      */
     public SnailBlock getSnailBlockByHash(String snailHash, boolean inclFruit) {
-        SnailBlock snailBlock = null;
+        String cacheKey = cacheKey(Constant.SNAIL_BLOCK_BY_HASH, snailHash, inclFruit);
+        SnailBlock snailBlock = getCached(cacheKey);
+        if (snailBlock != null) {
+            return snailBlock;
+        }
         try {
             AbeySnailBlock abeySnailBlock = new Request<>(
                     Constant.SNAIL_BLOCK_BY_HASH,
@@ -326,6 +450,10 @@ public class AbeyjRequest {
                     abeyjService,
                     AbeySnailBlock.class).send();
             snailBlock = abeySnailBlock.getSnailBlock();
+            if (snailBlock != null && snailBlock.getNumber() != null
+                    && isFinalSnailNumber(Numeric.decodeQuantity(snailBlock.getNumber()))) {
+                putCached(cacheKey, snailBlock);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -360,7 +488,11 @@ public class AbeyjRequest {
      * @return
      */
     public CommitteeInfo getCommitteeByNumber(BigInteger committeeNumber) {
-        CommitteeInfo committeeInfo = null;
+        String cacheKey = cacheKey(Constant.COMMITTEE_BY_NUMBER, committeeNumber);
+        CommitteeInfo committeeInfo = getCached(cacheKey);
+        if (committeeInfo != null) {
+            return committeeInfo;
+        }
         try {
             AbeyCommittee abeyCommittee = new Request<>(
                     Constant.COMMITTEE_BY_NUMBER,
@@ -368,6 +500,9 @@ public class AbeyjRequest {
                     abeyjService,
                     AbeyCommittee.class).send();
             committeeInfo = abeyCommittee.getCommittee();
+            if (committeeInfo != null && isFinalCommitteeNumber(committeeNumber)) {
+                putCached(cacheKey, committeeInfo);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -522,4 +657,90 @@ public class AbeyjRequest {
         }
         return fastBlock;
     }
+
+    private static String cacheKey(String method, Object... params) {
+        return method + Arrays.toString(params);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getCached(String cacheKey) {
+        WeightedLruCache<String, Object> currentCache = cache;
+        return currentCache == null ? null : (T) currentCache.get(cacheKey);
+    }
+
+    private void putCached(String cacheKey, Object value) {
+        WeightedLruCache<String, Object> currentCache = cache;
+        if (currentCache != null) {
+            currentCache.put(cacheKey, value);
+        }
+    }
+
+    private static long estimateSize(Object value) {
+        try {
+            return ObjectMapperFactory.getObjectMapper().writeValueAsBytes(value).length;
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * whether a fast block can no longer change, the head is looked up at most once per
+     * HEAD_REFRESH_INTERVAL and only while the number is above the known confirmed height
+     */
+    private boolean isFinalFastNumber(BigInteger fastNumber) {
+        if (cache == null || fastNumber == null) {
+            return false;
+        }
+        if (fastNumber.compareTo(confirmedFastNumber.get()) < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - fastHeadCheckedAt >= HEAD_REFRESH_INTERVAL) {
+            fastHeadCheckedAt = now;
+            BigInteger head = getCurrentFastNumber();
+            if (head != null) {
+                // a lagging node must not move the confirmed height back
+                confirmedFastNumber.accumulateAndGet(
+                        head.subtract(BigInteger.valueOf(fastFinalityDepth)), BigInteger::max);
+            }
+        }
+        return fastNumber.compareTo(confirmedFastNumber.get()) < 0;
+    }
+
+    private boolean isFinalSnailNumber(BigInteger snailNumber) {
+        if (cache == null || snailNumber == null) {
+            return false;
+        }
+        if (snailNumber.compareTo(confirmedSnailNumber.get()) < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - snailHeadCheckedAt >= HEAD_REFRESH_INTERVAL) {
+            snailHeadCheckedAt = now;
+            BigInteger head = getCurrentSnailNumber();
+            if (head != null) {
+                confirmedSnailNumber.accumulateAndGet(
+                        head.subtract(BigInteger.valueOf(snailFinalityDepth)), BigInteger::max);
+            }
+        }
+        return snailNumber.compareTo(confirmedSnailNumber.get()) < 0;
+    }
+
+    private boolean isFinalCommitteeNumber(BigInteger committeeNumber) {
+        if (cache == null || committeeNumber == null) {
+            return false;
+        }
+        if (committeeNumber.compareTo(BigInteger.valueOf(confirmedCommitteeNumber.get())) < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - committeeCheckedAt >= HEAD_REFRESH_INTERVAL) {
+            committeeCheckedAt = now;
+            Integer current = getCurrentCommitteeNumber();
+            if (current != null) {
+                confirmedCommitteeNumber.accumulateAndGet(current, Math::max);
+            }
+        }
+        return committeeNumber.compareTo(BigInteger.valueOf(confirmedCommitteeNumber.get())) < 0;
+    }
 }
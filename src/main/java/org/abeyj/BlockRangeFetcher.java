@@ -0,0 +1,226 @@
+package org.abeyj;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import org.abeyj.common.Constant;
+import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.DefaultBlockParameter;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.response.AbeyFastBlock;
+import org.abeyj.response.AbeySnailBlock;
+import org.abeyj.response.fast.FastBlock;
+import org.abeyj.response.snail.SnailBlock;
+import org.abeyj.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * fetch ranges of fast or snail blocks in parallel.
+ * <p>
+ * the range is split into batches of batchSize blocks, each batch is one JSON-RPC batch request,
+ * and up to parallelism batches are in flight at once. blocks are emitted strictly in block
+ * order and only as fast as the subscriber requests them, so at most parallelism batches are
+ * held in memory.
+ */
+public class BlockRangeFetcher {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final String SNAIL_BLOCK_BYNUMBER = "abey_getSnailBlockByNumber";
+
+    /**
+     * persistent position of a range fetch, so that an interrupted fetch can be resumed
+     */
+    public interface Checkpoint {
+
+        /**
+         * @return number of the last block that was fully processed, or null to start from the
+         * beginning of the range
+         */
+        BigInteger load();
+
+        /**
+         * called after the subscriber has processed the last block of each batch
+         *
+         * @param lastNumber number of the last processed block
+         */
+        void save(BigInteger lastNumber);
+    }
+
+    private final AbeyjService abeyjService;
+    private final Scheduler scheduler;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    public BlockRangeFetcher(AbeyjService abeyjService, Scheduler scheduler) {
+        this.abeyjService = abeyjService;
+        this.scheduler = scheduler;
+    }
+
+    public BlockRangeFetcher(AbeyjService abeyjService) {
+        this(abeyjService, Schedulers.io());
+    }
+
+    /**
+     * @param maxRetries how many times a failed batch, or a block missing from a batch reply, is
+     *                   requested again before the fetch fails
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Flowable<FastBlock> fetchFastBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize) {
+        return fetchFastBlocks(from, to, parallelism, batchSize, true, null);
+    }
+
+    /**
+     * fetch fast blocks from and to inclusive
+     *
+     * @param from                         first block number
+     * @param to                           last block number
+     * @param parallelism                  maximum number of batches in flight
+     * @param batchSize                    number of blocks per batch request
+     * @param returnFullTransactionObjects whether to include full transactions
+     * @param checkpoint                   optional checkpoint to resume from and update, may be null
+     * @return blocks in ascending order
+     */
+    public Flowable<FastBlock> fetchFastBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize,
+                                               boolean returnFullTransactionObjects, Checkpoint checkpoint) {
+        return fetchRange(Constant.BLOCK_BYNUMBER, returnFullTransactionObjects, AbeyFastBlock.class,
+                AbeyFastBlock::getFastBlock, FastBlock::getNumber,
+                from, to, parallelism, batchSize, checkpoint);
+    }
+
+    public Flowable<SnailBlock> fetchSnailBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize) {
+        return fetchSnailBlocks(from, to, parallelism, batchSize, false, null);
+    }
+
+    /**
+     * fetch snail blocks from and to inclusive
+     *
+     * @param from        first snail number
+     * @param to          last snail number
+     * @param parallelism maximum number of batches in flight
+     * @param batchSize   number of blocks per batch request
+     * @param inclFruit   whether include fruits info
+     * @param checkpoint  optional checkpoint to resume from and update, may be null
+     * @return blocks in ascending order
+     */
+    public Flowable<SnailBlock> fetchSnailBlocks(BigInteger from, BigInteger to, int parallelism, int batchSize,
+                                                 boolean inclFruit, Checkpoint checkpoint) {
+        return fetchRange(SNAIL_BLOCK_BYNUMBER, inclFruit, AbeySnailBlock.class,
+                AbeySnailBlock::getSnailBlock, snailBlock -> Numeric.decodeQuantity(snailBlock.getNumber()),
+                from, to, parallelism, batchSize, checkpoint);
+    }
+
+    private <R extends Response<?>, T> Flowable<T> fetchRange(
+            String method, boolean flag, Class<R> responseType,
+            Function<R, T> extract, Function<T, BigInteger> numberOf,
+            BigInteger from, BigInteger to, int parallelism, int batchSize, Checkpoint checkpoint) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("parallelism and batchSize must be at least 1");
+        }
+
+        long start = from.longValueExact();
+        if (checkpoint != null) {
+            BigInteger lastNumber = checkpoint.load();
+            if (lastNumber != null) {
+                start = Math.max(start, lastNumber.longValueExact() + 1);
+            }
+        }
+        long end = to.longValueExact();
+        if (start > end) {
+            return Flowable.empty();
+        }
+
+        final long first = start;
+        long batchCount = (end - first) / batchSize + 1;
+
+        Flowable<T> blocks = Flowable.rangeLong(0, batchCount)
+                .concatMapEager(index -> {
+                    long batchStart = first + index * batchSize;
+                    long batchEnd = Math.min(end, batchStart + batchSize - 1);
+                    return Flowable.fromCallable(() -> fetchBatch(
+                                    method, flag, responseType, extract, batchStart, batchEnd))
+                            .retry(maxRetries, e -> e instanceof IOException)
+                            .subscribeOn(scheduler);
+                }, parallelism, 1)
+                .concatMapIterable(batch -> batch);
+
+        if (checkpoint == null) {
+            return blocks;
+        }
+        return blocks.doAfterNext(block -> {
+            BigInteger number = numberOf.apply(block);
+            long offset = number.longValueExact() - first + 1;
+            if (offset % batchSize == 0 || number.longValueExact() == end) {
+                checkpoint.save(number);
+            }
+        });
+    }
+
+    private <R extends Response<?>, T> List<T> fetchBatch(
+            String method, boolean flag, Class<R> responseType, Function<R, T> extract,
+            long batchStart, long batchEnd) throws IOException {
+        BatchRequest batchRequest = new BatchRequest(abeyjService);
+        for (long number = batchStart; number <= batchEnd; number++) {
+            batchRequest.add(blockRequest(method, flag, responseType, number));
+        }
+        BatchResponse batchResponse = abeyjService.sendBatch(batchRequest);
+
+        List<T> blocks = new ArrayList<>((int) (batchEnd - batchStart + 1));
+        for (int i = 0; i <= batchEnd - batchStart; i++) {
+            T block = null;
+            if (batchResponse != null && i < batchResponse.getResponses().size()) {
+                block = extractBlock(responseType.cast(batchResponse.getResponses().get(i)), extract);
+            }
+            if (block == null) {
+                block = fetchBlock(method, flag, responseType, extract, batchStart + i);
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    // retry a single block that is missing or failed in the batch reply
+    private <R extends Response<?>, T> T fetchBlock(
+            String method, boolean flag, Class<R> responseType, Function<R, T> extract, long number)
+            throws IOException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                T block = extractBlock(blockRequest(method, flag, responseType, number).send(), extract);
+                if (block != null) {
+                    return block;
+                }
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        throw new IOException("Block " + number + " could not be fetched with " + method, lastError);
+    }
+
+    private static <R extends Response<?>, T> T extractBlock(R response, Function<R, T> extract) {
+        if (response == null || response.hasError()) {
+            return null;
+        }
+        return extract.apply(response);
+    }
+
+    private <R extends Response<?>> Request<?, R> blockRequest(
+            String method, boolean flag, Class<R> responseType, long number) {
+        return new Request<>(
+                method,
+                Arrays.asList(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)).getValue(), flag),
+                abeyjService,
+                responseType);
+    }
+}
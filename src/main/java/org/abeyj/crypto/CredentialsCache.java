@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.crypto;
+
+import org.abeyj.utils.Numeric;
+import org.abeyj.utils.WeightedLruCache;
+
+import java.math.BigInteger;
+
+/**
+ * Thread-safe cache of {@link Credentials} by private key.
+ *
+ * <p>{@link Credentials#create(String)} derives the public key with an elliptic curve
+ * multiplication and hashes it into the address, which costs about as much as signing. The cache
+ * does this once per key. Entries are keyed by the hash of the private key rather than the key
+ * itself, and the least recently used entries are evicted beyond {@code maxEntries}.
+ */
+public class CredentialsCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final WeightedLruCache<String, Credentials> cache;
+
+    public CredentialsCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public CredentialsCache(int maxEntries) {
+        this.cache = new WeightedLruCache<>(maxEntries, maxEntries, credentials -> 1);
+    }
+
+    /**
+     * Credentials of a private key, derived on the first request for the key.
+     *
+     * @param privateKey private key in hex, with or without prefix
+     * @return the credentials
+     */
+    public Credentials get(String privateKey) {
+        BigInteger key = Numeric.toBigInt(privateKey);
+        String hash =
+                Numeric.toHexStringNoPrefix(
+                        Hash.sha3(Numeric.toBytesPadded(key, Keys.PRIVATE_KEY_SIZE)));
+
+        Credentials credentials = cache.get(hash);
+        if (credentials == null) {
+            credentials = Credentials.create(ECKeyPair.create(key));
+            cache.put(hash, credentials);
+        }
+        return credentials;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+}
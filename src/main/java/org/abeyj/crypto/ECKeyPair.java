@@ -12,10 +12,6 @@
  */
 package org.abeyj.crypto;
 
-import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
-import org.bouncycastle.crypto.signers.ECDSASigner;
-import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
 import org.abeyj.utils.Numeric;
@@ -49,13 +45,9 @@ public class ECKeyPair {
      * @return An {@link ECDSASignature} of the hash
      */
     public ECDSASignature sign(byte[] transactionHash) {
-        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
-
-        ECPrivateKeyParameters privKey = new ECPrivateKeyParameters(privateKey, Sign.CURVE);
-        signer.init(true, privKey);
-        BigInteger[] components = signer.generateSignature(transactionHash);
-
-        return new ECDSASignature(components[0], components[1]).toCanonicalised();
+        Secp256k1Signer.RecoverableSignature signature =
+                Secp256k1Signer.signHash(transactionHash, privateKey);
+        return new ECDSASignature(signature.r, signature.s);
     }
 
     public static ECKeyPair create(KeyPair keyPair) {
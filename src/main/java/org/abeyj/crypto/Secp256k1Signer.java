@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.crypto;
+
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.abeyj.utils.Numeric;
+
+import java.math.BigInteger;
+
+/**
+ * ECDSA signer for secp256k1 that produces recoverable signatures in one pass.
+ *
+ * <p>The recovery id is taken from the point R computed while signing: its low bit is the parity
+ * of R's y coordinate, its high bit is set if R's x coordinate exceeded the curve order. This
+ * replaces recovering the public key for each candidate id, which costs more than the signature
+ * itself. Nonces are derived deterministically as in RFC 6979, so signatures are identical to
+ * those of BouncyCastle's {@code ECDSASigner}. The multiples of the generator are precomputed
+ * once, and the digest and nonce generator are reused per thread.
+ */
+public final class Secp256k1Signer {
+
+    private static final BigInteger N = Sign.CURVE.getN();
+    private static final ECPoint G = Sign.CURVE.getG();
+    private static final ECMultiplier BASE_POINT_MULTIPLIER = new FixedPointCombMultiplier();
+
+    private static final ThreadLocal<HMacDSAKCalculator> K_CALCULATOR =
+            ThreadLocal.withInitial(() -> new HMacDSAKCalculator(new SHA256Digest()));
+    private static final ThreadLocal<KeccakDigest> KECCAK =
+            ThreadLocal.withInitial(() -> new KeccakDigest(256));
+
+    static {
+        FixedPointUtil.precompute(G);
+    }
+
+    private Secp256k1Signer() {}
+
+    /**
+     * Sign a message with a private key.
+     *
+     * @param message message to sign
+     * @param privateKey private key
+     * @param needToHash whether to sign the Keccak-256 hash of the message, rather than the message
+     *     itself
+     * @return signature with a header byte of 27 plus the recovery id
+     */
+    public static Sign.SignatureData sign(
+            byte[] message, BigInteger privateKey, boolean needToHash) {
+        byte[] messageHash = needToHash ? keccak256(message) : message;
+        RecoverableSignature signature = signHash(messageHash, privateKey);
+
+        byte[] v = new byte[] {(byte) (signature.recId + 27)};
+        byte[] r = Numeric.toBytesPadded(signature.r, 32);
+        byte[] s = Numeric.toBytesPadded(signature.s, 32);
+        return new Sign.SignatureData(v, r, s);
+    }
+
+    /** Canonical signature of a hash, with s in the lower half of the curve order. */
+    static RecoverableSignature signHash(byte[] messageHash, BigInteger privateKey) {
+        BigInteger e = calculateE(messageHash);
+        HMacDSAKCalculator kCalculator = K_CALCULATOR.get();
+        kCalculator.init(N, privateKey, messageHash);
+
+        BigInteger r;
+        BigInteger s;
+        int recId;
+        do {
+            BigInteger k;
+            ECPoint p;
+            BigInteger x;
+            do {
+                k = kCalculator.nextK();
+                p = BASE_POINT_MULTIPLIER.multiply(G, k).normalize();
+                x = p.getAffineXCoord().toBigInteger();
+                r = x.mod(N);
+            } while (r.signum() == 0);
+
+            s = k.modInverse(N).multiply(e.add(privateKey.multiply(r))).mod(N);
+            recId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x.equals(r) ? 0 : 2);
+        } while (s.signum() == 0);
+
+        if (s.compareTo(Sign.HALF_CURVE_ORDER) > 0) {
+            // Negating s corresponds to negating R, which flips the parity of its y coordinate
+            s = N.subtract(s);
+            recId ^= 1;
+        }
+        return new RecoverableSignature(r, s, recId);
+    }
+
+    private static BigInteger calculateE(byte[] message) {
+        int messageBitLength = message.length * 8;
+        BigInteger e = new BigInteger(1, message);
+        if (N.bitLength() < messageBitLength) {
+            e = e.shiftRight(messageBitLength - N.bitLength());
+        }
+        return e;
+    }
+
+    private static byte[] keccak256(byte[] input) {
+        KeccakDigest digest = KECCAK.get();
+        digest.update(input, 0, input.length);
+        byte[] hash = new byte[digest.getDigestSize()];
+        digest.doFinal(hash, 0);
+        return hash;
+    }
+
+    static final class RecoverableSignature {
+        final BigInteger r;
+        final BigInteger s;
+        final int recId;
+
+        RecoverableSignature(BigInteger r, BigInteger s, int recId) {
+            this.r = r;
+            this.s = s;
+            this.recId = recId;
+        }
+    }
+}
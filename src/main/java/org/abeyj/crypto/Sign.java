@@ -20,7 +20,6 @@ import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.math.ec.FixedPointCombMultiplier;
 import org.bouncycastle.math.ec.custom.sec.SecP256K1Curve;
-import org.abeyj.utils.Numeric;
 
 import java.math.BigInteger;
 import java.security.SignatureException;
@@ -71,37 +70,7 @@ public class Sign {
     }
 
     public static SignatureData signMessage(byte[] message, ECKeyPair keyPair, boolean needToHash) {
-        BigInteger publicKey = keyPair.getPublicKey();
-        byte[] messageHash;
-        if (needToHash) {
-            messageHash = Hash.sha3(message);
-        } else {
-            messageHash = message;
-        }
-
-        ECDSASignature sig = keyPair.sign(messageHash);
-        // Now we have to work backwards to figure out the recId needed to recover the signature.
-        int recId = -1;
-        for (int i = 0; i < 4; i++) {
-            BigInteger k = recoverFromSignature(i, sig, messageHash);
-            if (k != null && k.equals(publicKey)) {
-                recId = i;
-                break;
-            }
-        }
-        if (recId == -1) {
-            throw new RuntimeException(
-                    "Could not construct a recoverable key. Are your credentials valid?");
-        }
-
-        int headerByte = recId + 27;
-
-        // 1 header + 32 bytes for R + 32 bytes for S
-        byte[] v = new byte[] {(byte) headerByte};
-        byte[] r = Numeric.toBytesPadded(sig.r, 32);
-        byte[] s = Numeric.toBytesPadded(sig.s, 32);
-
-        return new SignatureData(v, r, s);
+        return Secp256k1Signer.sign(message, keyPair.getPrivateKey(), needToHash);
     }
 
     /**
@@ -152,7 +121,9 @@ public class Sign {
         ECPoint R = decompressKey(x, (recId & 1) == 1);
         //   1.4. If nR != point at infinity, then do another iteration of Step 1 (callers
         //        responsibility).
-        if (!R.multiply(n).isInfinity()) {
+        //        secp256k1 has cofactor 1, every point on it has order n and passes this check,
+        //        so the multiplication is only needed for other curves.
+        if (!CURVE.getH().equals(BigInteger.ONE) && !R.multiply(n).isInfinity()) {
             return null;
         }
         //   1.5. Compute e from M using Steps 2 and 3 of ECDSA signature verification.
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.websocket.events.Notification;
+import org.abeyj.utils.Async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service decorator that coalesces concurrent requests into JSON-RPC batches.
+ *
+ * <p>Requests passed to {@link #send(Request, Class)} or {@link #sendAsync(Request, Class)} are
+ * held for at most {@code maxDelay} milliseconds, or until {@code maxBatchSize} requests have been
+ * collected, and are then sent to the underlying service as a single batch. Each caller's future
+ * is completed from the reply with the matching JSON-RPC id.
+ */
+public class BatchingAbeyjService implements AbeyjService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingAbeyjService.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    public static final long DEFAULT_MAX_DELAY = 5;
+
+    private final AbeyjService abeyjService;
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    private final Object lock = new Object();
+    private List<PendingRequest<?>> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public BatchingAbeyjService(
+            AbeyjService abeyjService,
+            int maxBatchSize,
+            long maxDelay,
+            ScheduledExecutorService scheduledExecutorService) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.abeyjService = abeyjService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    public BatchingAbeyjService(AbeyjService abeyjService, int maxBatchSize, long maxDelay) {
+        this(abeyjService, maxBatchSize, maxDelay, Async.sharedScheduledExecutorService());
+    }
+
+    public BatchingAbeyjService(AbeyjService abeyjService) {
+        this(abeyjService, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return sendAsync(request, responseType).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted batched request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new RuntimeException("Unexpected exception", e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+            Request request, Class<T> responseType) {
+        PendingRequest<T> pendingRequest = new PendingRequest<>(request, responseType);
+
+        List<PendingRequest<?>> batch = null;
+        synchronized (lock) {
+            pending.add(pendingRequest);
+            if (pending.size() >= maxBatchSize) {
+                batch = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush =
+                        scheduledExecutorService.schedule(
+                                this::flush, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batch != null) {
+            sendPending(batch);
+        }
+        return pendingRequest.result;
+    }
+
+    /** Send all requests collected so far without waiting for the batch window to close. */
+    public void flush() {
+        List<PendingRequest<?>> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        sendPending(batch);
+    }
+
+    private List<PendingRequest<?>> drain() {
+        List<PendingRequest<?>> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sendPending(List<PendingRequest<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (batch.size() == 1) {
+            // No point in wrapping a single request in an array
+            PendingRequest pendingRequest = batch.get(0);
+            abeyjService
+                    .sendAsync(pendingRequest.request, pendingRequest.responseType)
+                    .whenComplete(
+                            (response, error) -> pendingRequest.complete(response, error));
+            return;
+        }
+
+        BatchRequest batchRequest = new BatchRequest(abeyjService);
+        for (PendingRequest<?> pendingRequest : batch) {
+            batchRequest.add(pendingRequest.request);
+        }
+
+        log.debug("Sending {} coalesced requests as a batch", batch.size());
+        abeyjService
+                .sendBatchAsync(batchRequest)
+                .whenComplete((batchResponse, error) -> completeBatch(batch, batchResponse, error));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void completeBatch(
+            List<PendingRequest<?>> batch, BatchResponse batchResponse, Throwable error) {
+        if (error == null && batchResponse == null) {
+            error = new IOException("No response received for batch request");
+        }
+
+        if (error != null) {
+            for (PendingRequest<?> pendingRequest : batch) {
+                pendingRequest.result.completeExceptionally(error);
+            }
+            return;
+        }
+
+        Map<Long, Response<?>> responseForId = new HashMap<>();
+        for (Response<?> response : batchResponse.getResponses()) {
+            responseForId.put(response.getId(), response);
+        }
+
+        for (PendingRequest pendingRequest : batch) {
+            Response<?> response = responseForId.get(pendingRequest.request.getId());
+            if (response != null) {
+                pendingRequest.result.complete(response);
+            } else {
+                pendingRequest.result.completeExceptionally(
+                        new IOException(
+                                String.format(
+                                        "No reply for request with id %d in batch response",
+                                        pendingRequest.request.getId())));
+            }
+        }
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return abeyjService.sendBatch(batchRequest);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return abeyjService.sendBatchAsync(batchRequest);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+            Request request, String unsubscribeMethod, Class<T> responseType) {
+        return abeyjService.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The executor is the caller's or Async's shared one, other code may still use it
+        flush();
+        abeyjService.close();
+    }
+
+    private static class PendingRequest<T extends Response> {
+        private final Request<?, ? extends Response<?>> request;
+        private final Class<T> responseType;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        @SuppressWarnings("unchecked")
+        PendingRequest(Request request, Class<T> responseType) {
+            this.request = request;
+            this.responseType = responseType;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object response, Throwable error) {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete((T) response);
+            }
+        }
+    }
+}
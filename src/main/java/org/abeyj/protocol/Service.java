@@ -69,23 +69,37 @@ public abstract class Service implements AbeyjService {
 
         try (InputStream result = performIO(payload)) {
             if (result != null) {
-                ArrayNode nodes = (ArrayNode) objectMapper.readTree(result);
-                List<Response<?>> responses = new ArrayList<>(nodes.size());
-
-                for (int i = 0; i < nodes.size(); i++) {
-                    Request<?, ? extends Response<?>> request = batchRequest.getRequests().get(i);
-                    Response<?> response =
-                            objectMapper.treeToValue(nodes.get(i), request.getResponseType());
-                    responses.add(response);
-                }
-
-                return new BatchResponse(batchRequest.getRequests(), responses);
+                return readBatchResponse(batchRequest, result);
             } else {
                 return null;
             }
         }
     }
 
+    /**
+     * Deserialize the reply to a batch request, matching each reply to the request at the same
+     * position.
+     *
+     * @param batchRequest batch request that was sent
+     * @param result stream containing the JSON array of replies
+     * @return deserialized JSON-RPC responses
+     * @throws IOException thrown if the replies could not be read
+     */
+    protected BatchResponse readBatchResponse(BatchRequest batchRequest, InputStream result)
+            throws IOException {
+        ArrayNode nodes = (ArrayNode) objectMapper.readTree(result);
+        List<Response<?>> responses = new ArrayList<>(nodes.size());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Request<?, ? extends Response<?>> request = batchRequest.getRequests().get(i);
+            Response<?> response =
+                    objectMapper.treeToValue(nodes.get(i), request.getResponseType());
+            responses.add(response);
+        }
+
+        return new BatchResponse(batchRequest.getRequests(), responses);
+    }
+
     @Override
     public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
         return Async.run(() -> sendBatch(batchRequest));
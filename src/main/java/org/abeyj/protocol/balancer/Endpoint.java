@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.balancer;
+
+import org.abeyj.protocol.AbeyjService;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A node endpoint used by {@link LoadBalancingAbeyjService}, together with the statistics the
+ * selection policies use to pick between endpoints.
+ */
+public class Endpoint {
+
+    // Weight of the newest sample in the latency moving average
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final String name;
+    private final AbeyjService abeyjService;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private double ewmaLatencyNanos = 0;
+
+    private volatile long blockNumber = -1;
+    private volatile boolean reachable = true;
+
+    public Endpoint(String name, AbeyjService abeyjService) {
+        this.name = name;
+        this.abeyjService = abeyjService;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AbeyjService getAbeyjService() {
+        return abeyjService;
+    }
+
+    /** Number of requests currently in flight on this endpoint. */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /** Number of failed requests and health probes. */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /** Exponentially weighted moving average of request latency, in nanoseconds. */
+    public synchronized double getEwmaLatencyNanos() {
+        return ewmaLatencyNanos;
+    }
+
+    /** Latest block number reported by the health probe, or -1 if unknown. */
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    /** Whether the latest health probe succeeded. */
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    long onRequestStart() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    void onRequestSuccess(long startNanos) {
+        outstanding.decrementAndGet();
+        recordLatency(System.nanoTime() - startNanos);
+    }
+
+    void onRequestFailure(long startNanos) {
+        outstanding.decrementAndGet();
+        failureCount.incrementAndGet();
+        recordLatency(System.nanoTime() - startNanos);
+    }
+
+    void onProbeSuccess(long blockNumber) {
+        this.blockNumber = blockNumber;
+        this.reachable = true;
+    }
+
+    void onProbeFailure() {
+        failureCount.incrementAndGet();
+        this.reachable = false;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        if (ewmaLatencyNanos == 0) {
+            ewmaLatencyNanos = latencyNanos;
+        } else {
+            ewmaLatencyNanos = EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaLatencyNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.balancer;
+
+import java.util.List;
+
+/** Strategy used by {@link LoadBalancingAbeyjService} to pick the endpoint for a request. */
+public interface EndpointSelectionPolicy {
+
+    /**
+     * Select an endpoint to send the next request to.
+     *
+     * @param endpoints available endpoints, never empty
+     * @return the selected endpoint
+     */
+    Endpoint select(List<Endpoint> endpoints);
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.balancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency-weighted selection. Two endpoints are drawn at random and the one with the lower
+ * expected cost wins, where the cost is the moving average latency scaled by the number of
+ * requests already in flight. Endpoints without latency samples yet are preferred, so new or
+ * recovered endpoints get traffic.
+ */
+public class EwmaLatencyPolicy implements EndpointSelectionPolicy {
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints) {
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        Endpoint a = endpoints.get(first);
+        Endpoint b = endpoints.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private static double cost(Endpoint endpoint) {
+        return endpoint.getEwmaLatencyNanos() * (endpoint.getOutstanding() + 1);
+    }
+}
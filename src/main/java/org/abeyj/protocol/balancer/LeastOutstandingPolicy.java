@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.balancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the endpoint with the fewest requests in flight. Ties are broken in round-robin order so
+ * that idle endpoints share the load.
+ */
+public class LeastOutstandingPolicy implements EndpointSelectionPolicy {
+
+    private final AtomicInteger offset = new AtomicInteger();
+
+    @Override
+    public Endpoint select(List<Endpoint> endpoints) {
+        int size = endpoints.size();
+        int start = (offset.getAndIncrement() & Integer.MAX_VALUE) % size;
+
+        Endpoint best = null;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get((start + i) % size);
+            if (best == null || endpoint.getOutstanding() < best.getOutstanding()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.balancer;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.common.Constant;
+import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.FilterRoutes;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.core.RpcMethods;
+import org.abeyj.protocol.websocket.events.Notification;
+import org.abeyj.response.AbeyFastBlockNumber;
+import org.abeyj.utils.Async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service that spreads requests across several node endpoints.
+ *
+ * <p>Endpoints are picked by an {@link EndpointSelectionPolicy}. Every endpoint is probed with
+ * {@code abey_blockNumber} at a fixed interval; endpoints that fail the probe, or whose height
+ * falls more than {@code maxBlockLag} blocks behind the highest endpoint, stop receiving requests
+ * until they recover. Read-only methods that fail with an {@link IOException} are retried on a
+ * different endpoint.
+ *
+ * <p>Filter methods keep state on the node that created the filter. New filters are installed on
+ * the first available endpoint, and every later request for a filter goes to the endpoint that
+ * installed it, whether or not that endpoint is still available. Subscriptions are opened on a
+ * single endpoint as well.
+ */
+public class LoadBalancingAbeyjService implements AbeyjService {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancingAbeyjService.class);
+
+    public static final long DEFAULT_PROBE_INTERVAL = 5000;
+    public static final long DEFAULT_MAX_BLOCK_LAG = 5;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    private final List<Endpoint> endpoints;
+    private final EndpointSelectionPolicy policy;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final boolean ownsExecutor;
+    private final ScheduledFuture<?> probeTask;
+    private final long probeInterval;
+    private final FilterRoutes<Endpoint> filterRoutes = new FilterRoutes<>();
+
+    private volatile List<Endpoint> available;
+    private volatile long maxBlockLag = DEFAULT_MAX_BLOCK_LAG;
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    public LoadBalancingAbeyjService(
+            List<Endpoint> endpoints,
+            EndpointSelectionPolicy policy,
+            long probeInterval,
+            ScheduledExecutorService scheduledExecutorService) {
+        this(endpoints, policy, probeInterval, scheduledExecutorService, false);
+    }
+
+    public LoadBalancingAbeyjService(List<Endpoint> endpoints, EndpointSelectionPolicy policy) {
+        this(endpoints, policy, DEFAULT_PROBE_INTERVAL, Async.defaultExecutorService(), true);
+    }
+
+    public LoadBalancingAbeyjService(List<Endpoint> endpoints) {
+        this(endpoints, new EwmaLatencyPolicy());
+    }
+
+    private LoadBalancingAbeyjService(
+            List<Endpoint> endpoints,
+            EndpointSelectionPolicy policy,
+            long probeInterval,
+            ScheduledExecutorService scheduledExecutorService,
+            boolean ownsExecutor) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.available = this.endpoints;
+        this.policy = policy;
+        this.probeInterval = probeInterval;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.ownsExecutor = ownsExecutor;
+
+        this.probeTask =
+                scheduledExecutorService.scheduleWithFixedDelay(
+                        this::probeEndpoints, 0, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /** Endpoints that passed the latest health check. */
+    public List<Endpoint> getAvailableEndpoints() {
+        return available;
+    }
+
+    /**
+     * Set how many blocks an endpoint may fall behind the highest endpoint before it is ejected.
+     *
+     * @param maxBlockLag maximum number of blocks behind
+     */
+    public void setMaxBlockLag(long maxBlockLag) {
+        this.maxBlockLag = maxBlockLag;
+    }
+
+    /**
+     * Set how many times a failed read-only request is retried on another endpoint.
+     *
+     * @param maxRetries maximum number of retries
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        String method = request.getMethod();
+        int attempts = isRetryable(method) ? maxRetries + 1 : 1;
+        Set<Endpoint> tried = new HashSet<>();
+
+        IOException lastError = null;
+        for (int i = 0; i < attempts; i++) {
+            Endpoint endpoint = select(filterRoutes.targetFor(request), method, tried);
+            tried.add(endpoint);
+
+            long start = endpoint.onRequestStart();
+            try {
+                T response = endpoint.getAbeyjService().send(request, responseType);
+                endpoint.onRequestSuccess(start);
+                filterRoutes.onReply(request, response, endpoint);
+                return response;
+            } catch (IOException e) {
+                endpoint.onRequestFailure(start);
+                log.debug("Request {} failed on endpoint {}", method, endpoint, e);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+            Request request, Class<T> responseType) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        int attempts = isRetryable(request.getMethod()) ? maxRetries + 1 : 1;
+        sendAsync(request, responseType, attempts, new HashSet<>(), result);
+        return result;
+    }
+
+    private <T extends Response> void sendAsync(
+            Request request,
+            Class<T> responseType,
+            int attemptsLeft,
+            Set<Endpoint> tried,
+            CompletableFuture<T> result) {
+        Endpoint endpoint = select(filterRoutes.targetFor(request), request.getMethod(), tried);
+        tried.add(endpoint);
+
+        long start = endpoint.onRequestStart();
+        endpoint.getAbeyjService()
+                .sendAsync(request, responseType)
+                .whenComplete(
+                        (response, error) -> {
+                            if (error == null) {
+                                endpoint.onRequestSuccess(start);
+                                filterRoutes.onReply(request, response, endpoint);
+                                result.complete(response);
+                                return;
+                            }
+
+                            endpoint.onRequestFailure(start);
+                            if (attemptsLeft > 1 && isIOException(error)) {
+                                sendAsync(request, responseType, attemptsLeft - 1, tried, result);
+                            } else {
+                                result.completeExceptionally(error);
+                            }
+                        });
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        int attempts = isRetryable(batchRequest) ? maxRetries + 1 : 1;
+        String method = batchMethod(batchRequest);
+        Set<Endpoint> tried = new HashSet<>();
+
+        IOException lastError = null;
+        for (int i = 0; i < attempts; i++) {
+            Endpoint endpoint = select(filterRoutes.targetFor(batchRequest), method, tried);
+            tried.add(endpoint);
+
+            long start = endpoint.onRequestStart();
+            try {
+                BatchResponse response = endpoint.getAbeyjService().sendBatch(batchRequest);
+                endpoint.onRequestSuccess(start);
+                filterRoutes.onReply(response, endpoint);
+                return response;
+            } catch (IOException e) {
+                endpoint.onRequestFailure(start);
+                log.debug("Batch request failed on endpoint {}", endpoint, e);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        CompletableFuture<BatchResponse> result = new CompletableFuture<>();
+        int attempts = isRetryable(batchRequest) ? maxRetries + 1 : 1;
+        sendBatchAsync(batchRequest, attempts, new HashSet<>(), result);
+        return result;
+    }
+
+    private void sendBatchAsync(
+            BatchRequest batchRequest,
+            int attemptsLeft,
+            Set<Endpoint> tried,
+            CompletableFuture<BatchResponse> result) {
+        Endpoint endpoint =
+                select(filterRoutes.targetFor(batchRequest), batchMethod(batchRequest), tried);
+        tried.add(endpoint);
+
+        long start = endpoint.onRequestStart();
+        endpoint.getAbeyjService()
+                .sendBatchAsync(batchRequest)
+                .whenComplete(
+                        (response, error) -> {
+                            if (error == null) {
+                                endpoint.onRequestSuccess(start);
+                                filterRoutes.onReply(response, endpoint);
+                                result.complete(response);
+                                return;
+                            }
+
+                            endpoint.onRequestFailure(start);
+                            if (attemptsLeft > 1 && isIOException(error)) {
+                                sendBatchAsync(batchRequest, attemptsLeft - 1, tried, result);
+                            } else {
+                                result.completeExceptionally(error);
+                            }
+                        });
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+            Request request, String unsubscribeMethod, Class<T> responseType) {
+        return select(null, request.getMethod(), Collections.emptySet())
+                .getAbeyjService()
+                .subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        probeTask.cancel(false);
+        // An executor passed in by the caller may still be used by other code
+        if (ownsExecutor) {
+            scheduledExecutorService.shutdown();
+        }
+
+        IOException error = null;
+        for (Endpoint endpoint : endpoints) {
+            try {
+                endpoint.getAbeyjService().close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Whether a failed request for the given method can safely be sent again to another endpoint.
+     * By default this holds for methods that only read chain state.
+     *
+     * @param method JSON-RPC method name
+     * @return true if the request may be retried
+     */
+    protected boolean isRetryable(String method) {
+        return RpcMethods.isRepeatable(method);
+    }
+
+    private boolean isRetryable(BatchRequest batchRequest) {
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            if (!isRetryable(request.getMethod())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A batch containing a filter method must be routed like one
+    private static String batchMethod(BatchRequest batchRequest) {
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            if (request.getMethod() != null && RpcMethods.isFilterMethod(request.getMethod())) {
+                return request.getMethod();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIOException(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof IOException;
+    }
+
+    private Endpoint select(Endpoint filterEndpoint, String method, Set<Endpoint> exclude) {
+        if (filterEndpoint != null) {
+            return filterEndpoint;
+        }
+
+        List<Endpoint> candidates = available;
+        if (method != null && RpcMethods.isFilterMethod(method)) {
+            // New filters, and filters installed before this service knew of them
+            return candidates.get(0);
+        }
+
+        if (!exclude.isEmpty()) {
+            List<Endpoint> remaining = new ArrayList<>(candidates.size());
+            for (Endpoint endpoint : candidates) {
+                if (!exclude.contains(endpoint)) {
+                    remaining.add(endpoint);
+                }
+            }
+            if (!remaining.isEmpty()) {
+                candidates = remaining;
+            }
+        }
+        return policy.select(candidates);
+    }
+
+    private void probeEndpoints() {
+        List<Future<AbeyFastBlockNumber>> probes = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            probes.add(
+                    new Request<>(
+                                    Constant.CURRENT_BLOCK_NUMBER,
+                                    Collections.<String>emptyList(),
+                                    endpoint.getAbeyjService(),
+                                    AbeyFastBlockNumber.class)
+                            .sendAsync());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeInterval);
+        long highest = -1;
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                AbeyFastBlockNumber reply = probes.get(i).get(remaining, TimeUnit.NANOSECONDS);
+                if (reply.hasError()) {
+                    throw new IOException(reply.getError().getMessage());
+                }
+                endpoint.onProbeSuccess(reply.getBlockNumber().longValue());
+                highest = Math.max(highest, endpoint.getBlockNumber());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException | IOException | RuntimeException e) {
+                log.warn("Health probe failed for endpoint {}", endpoint, e);
+                probes.get(i).cancel(true);
+                endpoint.onProbeFailure();
+            }
+        }
+
+        List<Endpoint> healthy = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isReachable() && highest - endpoint.getBlockNumber() <= maxBlockLag) {
+                healthy.add(endpoint);
+            }
+        }
+
+        if (healthy.isEmpty()) {
+            log.warn("No healthy endpoints, sending requests to all endpoints");
+            available = endpoints;
+        } else {
+            if (healthy.size() < endpoints.size()) {
+                log.debug("Ejected {} unhealthy endpoints", endpoints.size() - healthy.size());
+            }
+            available = Collections.unmodifiableList(healthy);
+        }
+    }
+}
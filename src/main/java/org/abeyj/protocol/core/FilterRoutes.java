@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.core;
+
+import org.abeyj.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which of several targets, such as node endpoints or connections, installed each
+ * filter, so that later requests for the filter go to the same target.
+ *
+ * <p>A filter only exists on the node that installed it; any other node replies as if it had
+ * expired. Filters are forgotten once they are uninstalled through the same target.
+ *
+ * @param <T> type of the targets
+ */
+public final class FilterRoutes<T> {
+
+    private final Map<BigInteger, T> targetForFilter = new ConcurrentHashMap<>();
+
+    /**
+     * The target that installed the filter a request refers to.
+     *
+     * @param request request to route
+     * @return the target, or null if the request does not refer to a known filter
+     */
+    public T targetFor(Request<?, ?> request) {
+        BigInteger filterId = filterId(request);
+        return filterId == null ? null : targetForFilter.get(filterId);
+    }
+
+    /**
+     * The target that installed the first known filter a batch refers to.
+     *
+     * @param batchRequest batch to route
+     * @return the target, or null if the batch does not refer to a known filter
+     */
+    public T targetFor(BatchRequest batchRequest) {
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            T target = targetFor(request);
+            if (target != null) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record the outcome of a request sent to a target.
+     *
+     * @param request request that was sent
+     * @param response reply to the request
+     * @param target target the request was sent to
+     */
+    public void onReply(Request<?, ?> request, Response<?> response, T target) {
+        String method = request.getMethod();
+        if (method == null || response == null || !RpcMethods.isFilterMethod(method)) {
+            return;
+        }
+
+        String name = method.substring(method.indexOf('_') + 1);
+        if (name.startsWith("new")) {
+            if (!response.hasError() && response.getResult() instanceof String) {
+                BigInteger filterId = parseFilterId((String) response.getResult());
+                if (filterId != null) {
+                    targetForFilter.put(filterId, target);
+                }
+            }
+        } else if (name.startsWith("uninstall")) {
+            BigInteger filterId = filterId(request);
+            if (filterId != null) {
+                targetForFilter.remove(filterId, target);
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a batch sent to a target.
+     *
+     * @param batchResponse reply to the batch
+     * @param target target the batch was sent to
+     */
+    public void onReply(BatchResponse batchResponse, T target) {
+        Map<Long, Response<?>> responseForId = new HashMap<>();
+        for (Response<?> response : batchResponse.getResponses()) {
+            responseForId.put(response.getId(), response);
+        }
+        for (Request<?, ?> request : batchResponse.getRequests()) {
+            onReply(request, responseForId.get(request.getId()), target);
+        }
+    }
+
+    /** Number of filters whose target is known. */
+    public int size() {
+        return targetForFilter.size();
+    }
+
+    // Every filter method other than the ones installing a filter takes its id first
+    private static BigInteger filterId(Request<?, ?> request) {
+        String method = request.getMethod();
+        if (method == null || !RpcMethods.isFilterMethod(method)) {
+            return null;
+        }
+        List<?> params = request.getParams();
+        if (params == null || params.isEmpty() || !(params.get(0) instanceof String)) {
+            return null;
+        }
+        return parseFilterId((String) params.get(0));
+    }
+
+    private static BigInteger parseFilterId(String filterId) {
+        try {
+            return Numeric.toBigInt(filterId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -24,9 +24,11 @@ import org.abeyj.protocol.core.methods.response.admin.AdminDataDir;
 import org.abeyj.protocol.core.methods.response.admin.AdminNodeInfo;
 import org.abeyj.protocol.core.methods.response.admin.AdminPeers;
 import org.abeyj.protocol.rx.JsonRpc2_0Rx;
+import org.abeyj.protocol.rx.ReplayMetrics;
 import org.abeyj.protocol.websocket.events.LogNotification;
 import org.abeyj.protocol.websocket.events.NewHeadsNotification;
 import org.abeyj.utils.Async;
+import org.abeyj.utils.BackpressurePolicy;
 import org.abeyj.utils.Numeric;
 
 import java.io.IOException;
@@ -53,7 +55,7 @@ public class JsonRpc2_0Abeyj implements Abeyj {
             long pollingInterval,
             ScheduledExecutorService scheduledExecutorService) {
         this.abeyjService = abeyjService;
-        this.abeyjRx = new JsonRpc2_0Rx(this, scheduledExecutorService);
+        this.abeyjRx = new JsonRpc2_0Rx(this, scheduledExecutorService, abeyjService);
         this.blockTime = pollingInterval;
         this.scheduledExecutorService = scheduledExecutorService;
     }
@@ -758,6 +760,40 @@ public class JsonRpc2_0Abeyj implements Abeyj {
         return abeyjRx.replayPastAndFutureTransactionsFlowable(startBlock, blockTime);
     }
 
+    /**
+     * Set how many block requests may be in flight at once while replaying blocks.
+     *
+     * @param replayConcurrency maximum number of requests in flight
+     * @see JsonRpc2_0Rx#setReplayConcurrency(int)
+     */
+    public void setReplayConcurrency(int replayConcurrency) {
+        abeyjRx.setReplayConcurrency(replayConcurrency);
+    }
+
+    /**
+     * Set how many blocks are fetched per JSON-RPC batch while replaying blocks.
+     *
+     * @param replayBatchSize number of blocks per request
+     * @see JsonRpc2_0Rx#setReplayBatchSize(int)
+     */
+    public void setReplayBatchSize(int replayBatchSize) {
+        abeyjRx.setReplayBatchSize(replayBatchSize);
+    }
+
+    public ReplayMetrics getReplayMetrics() {
+        return abeyjRx.getReplayMetrics();
+    }
+
+    /**
+     * Set the backpressure policy applied to Flowables fed by polling filters.
+     *
+     * @param backpressurePolicy policy to apply
+     * @see JsonRpc2_0Rx#setBackpressurePolicy(BackpressurePolicy)
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        abeyjRx.setBackpressurePolicy(backpressurePolicy);
+    }
+
     @Override
     public void shutdown() {
         scheduledExecutorService.shutdown();
@@ -19,6 +19,8 @@ import org.abeyj.abi.datatypes.Type;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * A wrapper for a callable function. Can also return the raw encoded function
@@ -28,10 +30,33 @@ import java.util.concurrent.Callable;
 public class RemoteFunctionCall<T> extends RemoteCall<T> {
 
     private final Function function;
+    private final Supplier<CompletableFuture<T>> asyncCallable;
 
     public RemoteFunctionCall(Function function, Callable<T> callable) {
+        this(function, callable, null);
+    }
+
+    /**
+     * Creates a RemoteFunctionCall with a non-blocking implementation for {@link #sendAsync()}.
+     *
+     * @param function the function
+     * @param callable performs the call synchronously
+     * @param asyncCallable performs the call without blocking, or null to run callable on {@link
+     *     org.abeyj.utils.Async#getExecutor()}
+     */
+    public RemoteFunctionCall(
+            Function function, Callable<T> callable, Supplier<CompletableFuture<T>> asyncCallable) {
         super(callable);
         this.function = function;
+        this.asyncCallable = asyncCallable;
+    }
+
+    @Override
+    public CompletableFuture<T> sendAsync() {
+        if (asyncCallable == null) {
+            return super.sendAsync();
+        }
+        return asyncCallable.get();
     }
 
     /**
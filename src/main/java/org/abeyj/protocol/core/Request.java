@@ -40,11 +40,22 @@ public class Request<S, T extends Response> {
     public Request(String method, List<S> params, AbeyjService abeyjService, Class<T> type) {
         this.method = method;
         this.params = params;
-        this.id = nextId.getAndIncrement();
+        this.id = nextId();
         this.abeyjService = abeyjService;
         this.responseType = type;
     }
 
+    /**
+     * Allocate an id from the sequence used for new requests, for ids assigned outside of a
+     * request such as the id a batch is tracked by. Ids from this sequence never collide with ids
+     * of other requests created in this JVM.
+     *
+     * @return a new request id
+     */
+    public static long nextId() {
+        return nextId.getAndIncrement();
+    }
+
     public String getJsonrpc() {
         return jsonrpc;
     }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Classification of JSON-RPC methods by whether a request can safely be sent more than once. */
+public final class RpcMethods {
+    private RpcMethods() {}
+
+    // Methods outside the get* family that only read state
+    private static final Set<String> READ_ONLY_METHODS =
+            new HashSet<>(
+                    Arrays.asList(
+                            "blockNumber",
+                            "snailBlockNumber",
+                            "committeeNumber",
+                            "call",
+                            "estimateGas",
+                            "gasPrice",
+                            "chainId",
+                            "syncing",
+                            "protocolVersion",
+                            "mining",
+                            "hashrate",
+                            "coinbase",
+                            "accounts"));
+
+    /**
+     * Whether the method keeps state on the node that served it, such as an installed filter.
+     *
+     * @param method JSON-RPC method name
+     * @return true for filter methods
+     */
+    public static boolean isFilterMethod(String method) {
+        return method.contains("Filter");
+    }
+
+    /**
+     * Whether a request for the method only reads chain state and does not depend on state kept
+     * by a particular node, so that sending it again has no side effects.
+     *
+     * @param method JSON-RPC method name
+     * @return true if the request may be sent again
+     */
+    public static boolean isRepeatable(String method) {
+        if (method == null || isFilterMethod(method)) {
+            return false;
+        }
+
+        int separator = method.indexOf('_');
+        String namespace = separator < 0 ? "" : method.substring(0, separator);
+        String name = method.substring(separator + 1);
+
+        return namespace.equals("net")
+                || namespace.equals("web3")
+                || name.startsWith("get")
+                || READ_ONLY_METHODS.contains(name);
+    }
+}
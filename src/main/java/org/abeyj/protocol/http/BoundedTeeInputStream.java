@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Input stream that keeps a copy of the bytes read from the underlying stream, up to a fixed
+ * limit, so that the stream can be rewound to its start once. This lets the raw response of a
+ * streamed HTTP body be captured while Jackson is parsing it, without buffering the whole body
+ * up-front.
+ *
+ * <p>Calling {@link #reset()} replays the captured bytes and then continues with the unread
+ * remainder of the underlying stream. If more than {@code limit} bytes were read before the
+ * reset, the capture is discarded and {@link #reset()} fails.
+ */
+class BoundedTeeInputStream extends FilterInputStream {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 8192;
+
+    private final int limit;
+
+    private byte[] captured;
+    private int count;
+    private boolean overflowed;
+
+    // Position within captured while replaying, -1 if not replaying
+    private int replayPos = -1;
+
+    BoundedTeeInputStream(InputStream in, long expectedSize, int limit) {
+        super(in);
+        this.limit = limit;
+        int initialCapacity =
+                expectedSize > 0 ? (int) Math.min(expectedSize, limit) : DEFAULT_INITIAL_CAPACITY;
+        this.captured = new byte[Math.min(initialCapacity, limit)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (replayPos >= 0 && replayPos < count) {
+            return captured[replayPos++] & 0xff;
+        }
+
+        int b = in.read();
+        if (b != -1) {
+            capture(new byte[] {(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (replayPos >= 0 && replayPos < count) {
+            int n = Math.min(len, count - replayPos);
+            System.arraycopy(captured, replayPos, b, off, n);
+            replayPos += n;
+            return n;
+        }
+
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            capture(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must still be captured, so read them instead
+        byte[] buffer = new byte[(int) Math.min(n, DEFAULT_INITIAL_CAPACITY)];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        int replayable = replayPos >= 0 ? count - replayPos : 0;
+        return replayable + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // The only supported mark is the start of the stream
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (overflowed) {
+            throw new IOException(
+                    "Raw response exceeds the capture limit of " + limit + " bytes");
+        }
+        replayPos = 0;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        if (overflowed) {
+            return;
+        }
+
+        if (count + len > limit) {
+            overflowed = true;
+            captured = null;
+            return;
+        }
+
+        if (count + len > captured.length) {
+            int newCapacity = Math.max(count + len, (int) Math.min(captured.length * 2L, limit));
+            captured = Arrays.copyOf(captured, newCapacity);
+        }
+
+        System.arraycopy(b, off, captured, count, len);
+        count += len;
+        if (replayPos >= 0) {
+            replayPos = count;
+        }
+    }
+}
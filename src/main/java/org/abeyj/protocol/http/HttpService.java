@@ -19,16 +19,21 @@ import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.abeyj.protocol.Service;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
 import org.abeyj.protocol.exceptions.ClientConnectionException;
+import org.abeyj.utils.Async;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static okhttp3.ConnectionSpec.CLEARTEXT;
 
@@ -82,6 +87,18 @@ public class HttpService extends Service {
 
     public static final String DEFAULT_URL = "http://localhost:8545/";
 
+    /** Default limit of concurrent asynchronous requests, see {@link Dispatcher#setMaxRequests}. */
+    public static final int DEFAULT_MAX_REQUESTS = 256;
+
+    /**
+     * Default limit of concurrent asynchronous requests to a single host, see {@link
+     * Dispatcher#setMaxRequestsPerHost}.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+
+    /** Largest raw response captured when streaming responses with raw responses enabled. */
+    public static final int DEFAULT_MAX_RAW_RESPONSE_SIZE = 32 * 1024 * 1024;
+
     private static final Logger log = LoggerFactory.getLogger(HttpService.class);
 
     private OkHttpClient httpClient;
@@ -92,6 +109,10 @@ public class HttpService extends Service {
 
     private HashMap<String, String> headers = new HashMap<>();
 
+    private boolean streamResponses = false;
+
+    private int maxRawResponseSize = DEFAULT_MAX_RAW_RESPONSE_SIZE;
+
     public HttpService(String url, OkHttpClient httpClient, boolean includeRawResponses) {
         super(includeRawResponses);
         this.url = url;
@@ -128,8 +149,14 @@ public class HttpService extends Service {
     }
 
     private static OkHttpClient createOkHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(DEFAULT_MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+
         final OkHttpClient.Builder builder =
-                new OkHttpClient.Builder().connectionSpecs(CONNECTION_SPEC_LIST);
+                new OkHttpClient.Builder()
+                        .connectionSpecs(CONNECTION_SPEC_LIST)
+                        .dispatcher(dispatcher);
         configureLogging(builder);
         return builder.build();
     }
@@ -144,18 +171,18 @@ public class HttpService extends Service {
 
     @Override
     protected InputStream performIO(String request) throws IOException {
-
-        RequestBody requestBody = RequestBody.create(request, JSON_MEDIA_TYPE);
-        Headers headers = buildHeaders();
-
-        okhttp3.Request httpRequest =
-                new okhttp3.Request.Builder().url(url).headers(headers).post(requestBody).build();
-
-        try (okhttp3.Response response = httpClient.newCall(httpRequest).execute()) {
+        okhttp3.Response response = httpClient.newCall(buildHttpRequest(request)).execute();
+        boolean streaming = false;
+        try {
             processHeaders(response.headers());
             ResponseBody responseBody = response.body();
             if (response.isSuccessful()) {
                 if (responseBody != null) {
+                    if (streamResponses) {
+                        // The connection is released once the caller closes the stream
+                        streaming = true;
+                        return buildStreamingInputStream(responseBody);
+                    }
                     return buildInputStream(responseBody);
                 } else {
                     return null;
@@ -167,9 +194,110 @@ public class HttpService extends Service {
                 throw new ClientConnectionException(
                         "Invalid response received: " + code + "; " + text);
             }
+        } finally {
+            if (!streaming) {
+                response.close();
+            }
+        }
+    }
+
+    @Override
+    public <T extends org.abeyj.protocol.core.Response> CompletableFuture<T> sendAsync(
+            org.abeyj.protocol.core.Request request, Class<T> responseType) {
+        return performIOAsync(
+                request, inputStream -> objectMapper.readValue(inputStream, responseType));
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        if (batchRequest.getRequests().isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    new BatchResponse(Collections.emptyList(), Collections.emptyList()));
+        }
+
+        return performIOAsync(
+                batchRequest.getRequests(),
+                inputStream -> readBatchResponse(batchRequest, inputStream));
+    }
+
+    /**
+     * Send a request without blocking the calling thread. The body is read on an OkHttp
+     * dispatcher thread, and is then decoded on the {@link Async} executor so that the
+     * dispatcher is free to serve other calls.
+     */
+    private <T> CompletableFuture<T> performIOAsync(Object request, ResponseReader<T> reader) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        okhttp3.Request httpRequest;
+        try {
+            httpRequest = buildHttpRequest(objectMapper.writeValueAsString(request));
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        httpClient
+                .newCall(httpRequest)
+                .enqueue(
+                        new Callback() {
+                            @Override
+                            public void onFailure(Call call, IOException e) {
+                                result.completeExceptionally(e);
+                            }
+
+                            @Override
+                            public void onResponse(Call call, okhttp3.Response response) {
+                                try {
+                                    byte[] body = readBody(response);
+                                    Async.getExecutor()
+                                            .execute(() -> decode(body, reader, result));
+                                } catch (Throwable e) {
+                                    result.completeExceptionally(e);
+                                }
+                            }
+                        });
+
+        return result;
+    }
+
+    private byte[] readBody(okhttp3.Response response) throws IOException {
+        try (okhttp3.Response r = response) {
+            processHeaders(r.headers());
+            ResponseBody responseBody = r.body();
+            if (r.isSuccessful()) {
+                return responseBody == null ? null : responseBody.bytes();
+            } else {
+                int code = r.code();
+                String text = responseBody == null ? "N/A" : responseBody.string();
+
+                throw new ClientConnectionException(
+                        "Invalid response received: " + code + "; " + text);
+            }
+        }
+    }
+
+    private static <T> void decode(
+            byte[] body, ResponseReader<T> reader, CompletableFuture<T> result) {
+        if (body == null) {
+            result.complete(null);
+            return;
+        }
+
+        // A ByteArrayInputStream can be reset, which is needed to populate raw responses
+        try (InputStream inputStream = new ByteArrayInputStream(body)) {
+            result.complete(reader.read(inputStream));
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
         }
     }
 
+    private okhttp3.Request buildHttpRequest(String request) {
+        RequestBody requestBody = RequestBody.create(request, JSON_MEDIA_TYPE);
+        Headers headers = buildHeaders();
+
+        return new okhttp3.Request.Builder().url(url).headers(headers).post(requestBody).build();
+    }
+
     protected void processHeaders(Headers headers) {
         // Default implementation is empty
     }
@@ -203,6 +331,18 @@ public class HttpService extends Service {
         }
     }
 
+    private InputStream buildStreamingInputStream(ResponseBody responseBody) {
+        InputStream inputStream = responseBody.byteStream();
+        if (includeRawResponse) {
+            // capture the bytes as they are parsed, so that the rawResponse field can be
+            // populated without reading the body twice
+            return new BoundedTeeInputStream(
+                    inputStream, responseBody.contentLength(), maxRawResponseSize);
+        } else {
+            return inputStream;
+        }
+    }
+
     private Headers buildHeaders() {
         return Headers.of(headers);
     }
@@ -223,6 +363,60 @@ public class HttpService extends Service {
         return url;
     }
 
+    /**
+     * Set the maximum number of asynchronous requests that can be in flight at once. The limit
+     * applies to the {@link Dispatcher} of the underlying {@link OkHttpClient}, which may be
+     * shared with other clients.
+     *
+     * @param maxRequests maximum number of concurrent asynchronous requests
+     */
+    public void setMaxRequests(int maxRequests) {
+        httpClient.dispatcher().setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Set the maximum number of asynchronous requests that can be in flight to a single host at
+     * once. The limit applies to the {@link Dispatcher} of the underlying {@link OkHttpClient},
+     * which may be shared with other clients.
+     *
+     * @param maxRequestsPerHost maximum number of concurrent asynchronous requests per host
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        httpClient.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    /**
+     * Decode responses directly from the HTTP connection instead of reading the whole body into
+     * memory first. The connection is released once the response has been parsed.
+     *
+     * @param streamResponses true to stream responses
+     */
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    public int getMaxRawResponseSize() {
+        return maxRawResponseSize;
+    }
+
+    /**
+     * Set the largest response body that can be captured as a raw response when responses are
+     * streamed. Larger responses fail to deserialize when raw responses are included.
+     *
+     * @param maxRawResponseSize capture limit in bytes
+     */
+    public void setMaxRawResponseSize(int maxRawResponseSize) {
+        this.maxRawResponseSize = maxRawResponseSize;
+    }
+
     @Override
     public void close() throws IOException {}
+
+    private interface ResponseReader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
 }
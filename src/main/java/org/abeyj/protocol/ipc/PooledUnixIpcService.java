@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.ipc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.utils.HashedWheelTimer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UNIX domain socket IPC service that keeps a small pool of long-lived connections to the node.
+ *
+ * <p>Unlike {@link UnixIpcService}, which opens a new socket for every request, requests are
+ * pipelined over persistent connections and replies are matched by JSON-RPC id. Asynchronous
+ * requests do not hold a thread while they are in flight. Connections are opened lazily, and a
+ * connection that fails is replaced on the next request.
+ */
+public class PooledUnixIpcService extends IpcService {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledUnixIpcService.class);
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final long DEFAULT_REQUEST_TIMEOUT = 60;
+
+    private final String ipcSocketPath;
+
+    private final UnixIpcChannel[] channels;
+    // Request timeouts of all connections, cancelled as soon as the reply arrives
+    private final HashedWheelTimer timeoutTimer = new HashedWheelTimer();
+
+    private volatile long requestTimeout = TimeUnit.SECONDS.toMillis(DEFAULT_REQUEST_TIMEOUT);
+    private volatile boolean closed = false;
+
+    public PooledUnixIpcService(String ipcSocketPath, int poolSize, boolean includeRawResponse) {
+        super(includeRawResponse);
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.ipcSocketPath = ipcSocketPath;
+        this.channels = new UnixIpcChannel[poolSize];
+    }
+
+    public PooledUnixIpcService(String ipcSocketPath, int poolSize) {
+        this(ipcSocketPath, poolSize, false);
+    }
+
+    public PooledUnixIpcService(String ipcSocketPath, boolean includeRawResponse) {
+        this(ipcSocketPath, DEFAULT_POOL_SIZE, includeRawResponse);
+    }
+
+    public PooledUnixIpcService(String ipcSocketPath) {
+        this(ipcSocketPath, DEFAULT_POOL_SIZE, false);
+    }
+
+    /**
+     * Set how long to wait for the reply to a request before failing it.
+     *
+     * @param timeout time to wait for a reply
+     * @param unit unit of timeout
+     */
+    public void setRequestTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.requestTimeout = unit.toMillis(timeout);
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        try {
+            return new ByteArrayInputStream(performIOAsync(payload).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted IPC request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new RuntimeException("Unexpected exception", e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+            Request request, Class<T> responseType) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            String payload = objectMapper.writeValueAsString(request);
+            performIOAsync(payload)
+                    .whenComplete(
+                            (reply, error) -> {
+                                if (error != null) {
+                                    result.completeExceptionally(error);
+                                    return;
+                                }
+                                try {
+                                    result.complete(
+                                            objectMapper.readValue(
+                                                    new ByteArrayInputStream(reply),
+                                                    responseType));
+                                } catch (IOException e) {
+                                    result.completeExceptionally(e);
+                                }
+                            });
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        CompletableFuture<BatchResponse> result = new CompletableFuture<>();
+        if (batchRequest.getRequests().isEmpty()) {
+            result.complete(
+                    new BatchResponse(Collections.emptyList(), Collections.emptyList()));
+            return result;
+        }
+
+        try {
+            String payload = objectMapper.writeValueAsString(batchRequest.getRequests());
+            performIOAsync(payload)
+                    .whenComplete(
+                            (reply, error) -> {
+                                if (error != null) {
+                                    result.completeExceptionally(error);
+                                    return;
+                                }
+                                try {
+                                    result.complete(
+                                            readBatchResponse(
+                                                    batchRequest, new ByteArrayInputStream(reply)));
+                                } catch (IOException e) {
+                                    result.completeExceptionally(e);
+                                }
+                            });
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private CompletableFuture<byte[]> performIOAsync(String payload) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            Long requestId = UnixIpcChannel.extractId(objectMapper.getFactory(), bytes);
+            if (requestId == null) {
+                throw new IOException("IPC requests must have an integral 'id' field");
+            }
+
+            log.debug(">> {}", payload);
+            return acquireChannel().write(requestId, bytes, requestTimeout);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    /**
+     * Pick the connection with the fewest in-flight requests. A new connection is only opened
+     * when every open connection is busy and the pool is not yet full.
+     */
+    private UnixIpcChannel acquireChannel() throws IOException {
+        synchronized (channels) {
+            if (closed) {
+                throw new IOException("IPC service was closed");
+            }
+
+            UnixIpcChannel best = null;
+            int freeSlot = -1;
+            for (int i = 0; i < channels.length; i++) {
+                UnixIpcChannel channel = channels[i];
+                if (channel == null || !channel.isOpen()) {
+                    if (freeSlot < 0) {
+                        freeSlot = i;
+                    }
+                } else if (best == null || channel.pendingCount() < best.pendingCount()) {
+                    best = channel;
+                }
+            }
+
+            if (best != null && (best.pendingCount() == 0 || freeSlot < 0)) {
+                return best;
+            }
+
+            UnixIpcChannel channel =
+                    UnixIpcChannel.open(ipcSocketPath, objectMapper.getFactory(), timeoutTimer);
+            channels[freeSlot] = channel;
+            return channel;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (channels) {
+            closed = true;
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i] != null) {
+                    channels[i].close();
+                    channels[i] = null;
+                }
+            }
+        }
+        timeoutTimer.stop();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.ipc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.utils.HashedWheelTimer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived UNIX domain socket connection that can carry many in-flight JSON-RPC requests at
+ * once. Replies are read by a single reader thread per connection and matched to their requests
+ * by JSON-RPC id, in the same way as {@link org.abeyj.protocol.websocket.WebSocketService}.
+ * A request whose reply does not arrive in time, for instance because its id could not be read,
+ * fails with a timeout.
+ */
+class UnixIpcChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(UnixIpcChannel.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final AtomicInteger nextChannelId = new AtomicInteger(0);
+
+    private final UnixSocketChannel channel;
+    private final JsonFactory jsonFactory;
+    private final HashedWheelTimer timeoutTimer;
+    private final Object writeLock = new Object();
+
+    // Map of a sent request id to the future completed with the raw reply
+    private final Map<Long, CompletableFuture<byte[]>> pendingForId = new ConcurrentHashMap<>();
+
+    private volatile boolean open = true;
+
+    private UnixIpcChannel(
+            UnixSocketChannel channel, JsonFactory jsonFactory, HashedWheelTimer timeoutTimer) {
+        this.channel = channel;
+        this.jsonFactory = jsonFactory;
+        this.timeoutTimer = timeoutTimer;
+    }
+
+    static UnixIpcChannel open(
+            String ipcSocketPath, JsonFactory jsonFactory, HashedWheelTimer timeoutTimer)
+            throws IOException {
+        UnixSocketChannel socketChannel =
+                UnixSocketChannel.open(new UnixSocketAddress(ipcSocketPath));
+        UnixIpcChannel ipcChannel = new UnixIpcChannel(socketChannel, jsonFactory, timeoutTimer);
+
+        Thread reader =
+                new Thread(ipcChannel::readLoop, "abeyj-ipc-" + nextChannelId.getAndIncrement());
+        reader.setDaemon(true);
+        reader.start();
+
+        return ipcChannel;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    int pendingCount() {
+        return pendingForId.size();
+    }
+
+    /**
+     * Write a request to the socket without waiting for its reply.
+     *
+     * @param requestId JSON-RPC id of the request, or of the first request of a batch
+     * @param payload serialized request
+     * @param timeoutMillis time to wait for the reply, in milliseconds
+     * @return future completed with the raw reply once it is received
+     */
+    CompletableFuture<byte[]> write(long requestId, byte[] payload, long timeoutMillis) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        if (!open) {
+            result.completeExceptionally(new IOException("IPC connection was closed"));
+            return result;
+        }
+
+        if (pendingForId.putIfAbsent(requestId, result) != null) {
+            result.completeExceptionally(
+                    new IOException(
+                            String.format("Request with id %d is already in flight", requestId)));
+            return result;
+        }
+        if (!scheduleTimeout(requestId, result, timeoutMillis)) {
+            return result;
+        }
+
+        try {
+            synchronized (writeLock) {
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            pendingForId.remove(requestId);
+            result.completeExceptionally(e);
+            close(e);
+        }
+
+        return result;
+    }
+
+    private boolean scheduleTimeout(
+            long requestId, CompletableFuture<byte[]> result, long timeoutMillis) {
+        HashedWheelTimer.Timeout timeout;
+        try {
+            timeout =
+                    timeoutTimer.newTimeout(
+                            () -> {
+                                if (pendingForId.remove(requestId, result)) {
+                                    result.completeExceptionally(
+                                            new IOException(
+                                                    String.format(
+                                                            "Request with id %d timed out",
+                                                            requestId)));
+                                }
+                            },
+                            timeoutMillis,
+                            TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // The service was closed and stopped its timer
+            pendingForId.remove(requestId, result);
+            result.completeExceptionally(new IOException("IPC service was closed"));
+            return false;
+        }
+        result.whenComplete((reply, throwable) -> timeout.cancel());
+        return true;
+    }
+
+    void close() {
+        close(new IOException("IPC connection was closed"));
+    }
+
+    private void close(IOException cause) {
+        open = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close IPC connection", e);
+        }
+
+        for (Long id : pendingForId.keySet()) {
+            CompletableFuture<byte[]> pending = pendingForId.remove(id);
+            if (pending != null) {
+                pending.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        ByteArrayOutputStream message = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+
+        IOException cause = new IOException("IPC connection was closed");
+        try {
+            while (open) {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (bytes[i] == '\n') {
+                        message.write(bytes, start, i - start);
+                        onMessage(message.toByteArray());
+                        message.reset();
+                        start = i + 1;
+                    }
+                }
+                message.write(bytes, start, buffer.position() - start);
+            }
+        } catch (IOException e) {
+            if (open) {
+                log.warn("IPC connection failed", e);
+            }
+            cause = e;
+        } catch (RuntimeException e) {
+            log.error("IPC reader failed", e);
+            cause = new IOException("IPC reader failed", e);
+        } finally {
+            // Nothing reads replies any more, fail every request still waiting for one
+            close(cause);
+        }
+    }
+
+    private void onMessage(byte[] message) {
+        Long id;
+        try {
+            id = extractId(jsonFactory, message);
+        } catch (IOException e) {
+            log.error("Failed to parse incoming IPC message", e);
+            return;
+        }
+
+        if (id == null) {
+            log.debug("Ignoring IPC message without an id");
+            return;
+        }
+
+        CompletableFuture<byte[]> pending = pendingForId.remove(id);
+        if (pending != null) {
+            pending.complete(message);
+        } else {
+            log.warn("Received reply for unexpected request id: {}", id);
+        }
+    }
+
+    /**
+     * Find the JSON-RPC id of a request or reply without binding the whole message. For a batch,
+     * the id of the first element is returned.
+     *
+     * @param jsonFactory factory used to create the parser
+     * @param message serialized JSON-RPC message
+     * @return the id, or null if the message has no integral id
+     * @throws IOException thrown if the message is not valid JSON
+     */
+    static Long extractId(JsonFactory jsonFactory, byte[] message) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("id".equals(field)) {
+                    return value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+}
@@ -18,67 +18,360 @@ import io.reactivex.FlowableEmitter;
 import io.reactivex.Scheduler;
 import io.reactivex.schedulers.Schedulers;
 import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
 import org.abeyj.protocol.core.DefaultBlockParameter;
 import org.abeyj.protocol.core.DefaultBlockParameterName;
 import org.abeyj.protocol.core.DefaultBlockParameterNumber;
 import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
 import org.abeyj.protocol.core.filters.BlockFilter;
 import org.abeyj.protocol.core.filters.LogFilter;
 import org.abeyj.protocol.core.filters.PendingTransactionFilter;
 import org.abeyj.protocol.core.methods.request.AbeyFilter;
 import org.abeyj.protocol.core.methods.response.AbeyBlock;
+import org.abeyj.protocol.core.methods.response.AbeyLog;
+import org.abeyj.protocol.core.methods.response.AbeySubscribe;
 import org.abeyj.protocol.core.methods.response.Log;
 import org.abeyj.protocol.core.methods.response.Transaction;
+import org.abeyj.protocol.websocket.ShardedWebSocketService;
+import org.abeyj.protocol.websocket.WebSocketService;
+import org.abeyj.protocol.websocket.events.LogNotification;
+import org.abeyj.protocol.websocket.events.NewHead;
+import org.abeyj.protocol.websocket.events.PendingTransactionNotification;
+import org.abeyj.utils.BackpressurePolicy;
 import org.abeyj.utils.Flowables;
+import org.abeyj.utils.Numeric;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
-/** abeyj reactive API implementation. */
+/**
+ * abeyj reactive API implementation.
+ *
+ * <p>When the underlying service is WebSocket based, new block hashes, pending transaction hashes
+ * and logs are pushed by the node over {@code abey_subscribe} instead of being polled through
+ * filters. A dropped subscription is re-established after the polling interval,
+ * and any blocks or logs produced in the meantime are fetched and emitted before live events
+ * resume.
+ */
 public class JsonRpc2_0Rx {
 
+    /** Default number of block requests, or batches of them, in flight during a replay. */
+    public static final int DEFAULT_REPLAY_CONCURRENCY = 4;
+
+    /** Default number of blocks fetched per request during a replay. */
+    public static final int DEFAULT_REPLAY_BATCH_SIZE = 1;
+
     private final Abeyj abeyj;
+    private final AbeyjService abeyjService;
     private final ScheduledExecutorService scheduledExecutorService;
     private final Scheduler scheduler;
+    private final ReplayMetrics replayMetrics = new ReplayMetrics();
+
+    private volatile int replayConcurrency = DEFAULT_REPLAY_CONCURRENCY;
+    private volatile int replayBatchSize = DEFAULT_REPLAY_BATCH_SIZE;
+    private volatile BackpressurePolicy backpressurePolicy = BackpressurePolicy.unbounded();
 
     public JsonRpc2_0Rx(Abeyj abeyj, ScheduledExecutorService scheduledExecutorService) {
+        this(abeyj, scheduledExecutorService, null);
+    }
+
+    public JsonRpc2_0Rx(
+            Abeyj abeyj,
+            ScheduledExecutorService scheduledExecutorService,
+            AbeyjService abeyjService) {
         this.abeyj = abeyj;
+        this.abeyjService = abeyjService;
         this.scheduledExecutorService = scheduledExecutorService;
         this.scheduler = Schedulers.from(scheduledExecutorService);
     }
 
+    /**
+     * Set how many block requests may be in flight at once while replaying blocks. Blocks are
+     * always emitted in order, however many are fetched concurrently.
+     *
+     * @param replayConcurrency maximum number of requests in flight
+     */
+    public void setReplayConcurrency(int replayConcurrency) {
+        if (replayConcurrency < 1) {
+            throw new IllegalArgumentException("Replay concurrency must be at least 1");
+        }
+        this.replayConcurrency = replayConcurrency;
+    }
+
+    /**
+     * Set how many blocks are fetched per round trip while replaying blocks. A size greater than
+     * one sends the block requests as a JSON-RPC batch.
+     *
+     * @param replayBatchSize number of blocks per request
+     */
+    public void setReplayBatchSize(int replayBatchSize) {
+        if (replayBatchSize < 1) {
+            throw new IllegalArgumentException("Replay batch size must be at least 1");
+        }
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    /**
+     * Set the backpressure policy applied to Flowables fed by polling filters. Flowables fed by a
+     * WebSocket subscription follow the policy of the WebSocket service instead.
+     *
+     * @param backpressurePolicy policy to apply
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    public ReplayMetrics getReplayMetrics() {
+        return replayMetrics;
+    }
+
     public Flowable<String> ethBlockHashFlowable(long pollingInterval) {
-        return Flowable.create(
-                subscriber -> {
-                    BlockFilter blockFilter = new BlockFilter(abeyj, subscriber::onNext);
-                    run(blockFilter, subscriber, pollingInterval);
-                },
-                BackpressureStrategy.BUFFER);
+        if (supportsSubscriptions()) {
+            return subscribedBlockHashFlowable(pollingInterval);
+        }
+
+        return backpressurePolicy.apply(
+                Flowable.create(
+                        subscriber -> {
+                            BlockFilter blockFilter = new BlockFilter(abeyj, subscriber::onNext);
+                            run(blockFilter, subscriber, pollingInterval);
+                        },
+                        BackpressureStrategy.MISSING),
+                String.class);
     }
 
     public Flowable<String> ethPendingTransactionHashFlowable(long pollingInterval) {
-        return Flowable.create(
-                subscriber -> {
-                    PendingTransactionFilter pendingTransactionFilter =
-                            new PendingTransactionFilter(abeyj, subscriber::onNext);
+        if (supportsSubscriptions()) {
+            return resubscribing(
+                            () ->
+                                    abeyjService.subscribe(
+                                            new Request<>(
+                                                    "abey_subscribe",
+                                                    Collections.singletonList(
+                                                            "newPendingTransactions"),
+                                                    abeyjService,
+                                                    AbeySubscribe.class),
+                                            "abey_unsubscribe",
+                                            PendingTransactionNotification.class),
+                            pollingInterval,
+                            null)
+                    .map(notification -> notification.getParams().getResult());
+        }
+
+        return backpressurePolicy.apply(
+                Flowable.create(
+                        subscriber -> {
+                            PendingTransactionFilter pendingTransactionFilter =
+                                    new PendingTransactionFilter(abeyj, subscriber::onNext);
 
-                    run(pendingTransactionFilter, subscriber, pollingInterval);
-                },
-                BackpressureStrategy.BUFFER);
+                            run(pendingTransactionFilter, subscriber, pollingInterval);
+                        },
+                        BackpressureStrategy.MISSING),
+                String.class);
     }
 
     public Flowable<Log> ethLogFlowable(
             AbeyFilter abeyFilter, long pollingInterval) {
-        return Flowable.create(
-                subscriber -> {
-                    LogFilter logFilter = new LogFilter(abeyj, subscriber::onNext, abeyFilter);
+        if (supportsSubscriptions() && isLiveOnly(abeyFilter)) {
+            return subscribedLogFlowable(abeyFilter, pollingInterval);
+        }
+
+        return backpressurePolicy.apply(
+                Flowable.create(
+                        subscriber -> {
+                            LogFilter logFilter =
+                                    new LogFilter(abeyj, subscriber::onNext, abeyFilter);
 
-                    run(logFilter, subscriber, pollingInterval);
-                },
-                BackpressureStrategy.BUFFER);
+                            run(logFilter, subscriber, pollingInterval);
+                        },
+                        BackpressureStrategy.MISSING),
+                Log.class);
+    }
+
+    private boolean supportsSubscriptions() {
+        return abeyjService instanceof WebSocketService
+                || abeyjService instanceof ShardedWebSocketService;
+    }
+
+    /**
+     * Only filters that start at the chain head can be served by a log subscription, anything
+     * reaching into the past still needs a polling filter to deliver its historic logs.
+     */
+    private static boolean isLiveOnly(AbeyFilter abeyFilter) {
+        return abeyFilter.getBlockHash() == null
+                && isLatest(abeyFilter.getFromBlock())
+                && isLatest(abeyFilter.getToBlock());
+    }
+
+    private static boolean isLatest(DefaultBlockParameter blockParameter) {
+        return blockParameter == null || blockParameter == DefaultBlockParameterName.LATEST;
+    }
+
+    private Flowable<String> subscribedBlockHashFlowable(long retryInterval) {
+        return Flowable.defer(
+                () -> {
+                    AtomicReference<BigInteger> lastBlockNumber = new AtomicReference<>();
+                    return resubscribing(abeyj::newHeadsNotifications, retryInterval, null)
+                            .concatMap(
+                                    notification ->
+                                            withMissedBlockHashes(
+                                                    notification.getParams().getResult(),
+                                                    lastBlockNumber));
+                });
+    }
+
+    /**
+     * Emit the hash of a new head, preceded by the hashes of any blocks that were skipped since
+     * the previous head, for instance while the subscription was being re-established.
+     */
+    private Flowable<String> withMissedBlockHashes(
+            NewHead head, AtomicReference<BigInteger> lastBlockNumber) {
+        BigInteger blockNumber = Numeric.decodeQuantity(head.getNumber());
+        BigInteger previous = lastBlockNumber.get();
+        if (previous == null || blockNumber.compareTo(previous) > 0) {
+            lastBlockNumber.set(blockNumber);
+        }
+
+        Flowable<String> headHash = Flowable.just(head.getHash());
+        if (previous == null || blockNumber.compareTo(previous.add(BigInteger.ONE)) <= 0) {
+            return headHash;
+        }
+
+        return replayBlocksFlowableSync(
+                        new DefaultBlockParameterNumber(previous.add(BigInteger.ONE)),
+                        new DefaultBlockParameterNumber(blockNumber.subtract(BigInteger.ONE)),
+                        false)
+                .map(abeyBlock -> abeyBlock.getBlock().getHash())
+                .concatWith(headHash);
+    }
+
+    private Flowable<Log> subscribedLogFlowable(AbeyFilter abeyFilter, long retryInterval) {
+        Map<String, Object> params = new HashMap<>();
+        if (abeyFilter.getAddress() != null && !abeyFilter.getAddress().isEmpty()) {
+            params.put("address", abeyFilter.getAddress());
+        }
+        if (!abeyFilter.getTopics().isEmpty()) {
+            params.put("topics", abeyFilter.getTopics());
+        }
+
+        return Flowable.defer(
+                () -> {
+                    AtomicReference<BigInteger> lastBlockNumber = new AtomicReference<>();
+                    AtomicBoolean resubscribed = new AtomicBoolean(false);
+                    return resubscribing(
+                                    () ->
+                                            abeyjService.subscribe(
+                                                    new Request<>(
+                                                            "abey_subscribe",
+                                                            Arrays.asList("logs", params),
+                                                            abeyjService,
+                                                            AbeySubscribe.class),
+                                                    "abey_unsubscribe",
+                                                    LogNotification.class),
+                                    retryInterval,
+                                    resubscribed)
+                            .map(notification -> toLog(notification.getParams().getResult()))
+                            .concatMap(
+                                    log ->
+                                            withMissedLogs(
+                                                    log,
+                                                    abeyFilter,
+                                                    lastBlockNumber,
+                                                    resubscribed));
+                });
+    }
+
+    /**
+     * Emit a live log, preceded by the logs matching the filter in any blocks that were missed
+     * while the subscription was being re-established.
+     */
+    private Flowable<Log> withMissedLogs(
+            Log log,
+            AbeyFilter abeyFilter,
+            AtomicReference<BigInteger> lastBlockNumber,
+            AtomicBoolean resubscribed) {
+        BigInteger blockNumber = log.getBlockNumber();
+        BigInteger previous = lastBlockNumber.get();
+        if (previous == null || blockNumber.compareTo(previous) > 0) {
+            lastBlockNumber.set(blockNumber);
+        }
+
+        Flowable<Log> liveLog = Flowable.just(log);
+        if (!resubscribed.getAndSet(false)
+                || previous == null
+                || blockNumber.compareTo(previous.add(BigInteger.ONE)) <= 0) {
+            return liveLog;
+        }
+
+        AbeyFilter backfillFilter =
+                new AbeyFilter(
+                        new DefaultBlockParameterNumber(previous.add(BigInteger.ONE)),
+                        new DefaultBlockParameterNumber(blockNumber.subtract(BigInteger.ONE)),
+                        abeyFilter.getAddress());
+        backfillFilter.getTopics().addAll(abeyFilter.getTopics());
+
+        // Off the thread delivering the live log, which may also have to read the reply
+        return abeyj.abeyGetLogs(backfillFilter)
+                .flowable()
+                .subscribeOn(scheduler)
+                .flatMapIterable(AbeyLog::getLogs)
+                .map(logResult -> (Log) logResult.get())
+                .concatWith(liveLog);
+    }
+
+    /**
+     * Subscribe to a notification stream and subscribe again, after {@code retryInterval}
+     * milliseconds, whenever the subscription fails with an I/O error such as a dropped
+     * connection.
+     */
+    private <T> Flowable<T> resubscribing(
+            Callable<Flowable<T>> subscription,
+            long retryInterval,
+            AtomicBoolean resubscribed) {
+        return Flowable.defer(subscription)
+                .retryWhen(
+                        errors ->
+                                errors.flatMap(
+                                        error -> {
+                                            if (!(error instanceof IOException)) {
+                                                return Flowable.error(error);
+                                            }
+                                            if (resubscribed != null) {
+                                                resubscribed.set(true);
+                                            }
+                                            return Flowable.timer(
+                                                    retryInterval,
+                                                    TimeUnit.MILLISECONDS,
+                                                    scheduler);
+                                        }));
+    }
+
+    private static Log toLog(org.abeyj.protocol.websocket.events.Log eventLog) {
+        Log log = new Log();
+        log.setAddress(eventLog.getAddress());
+        log.setBlockHash(eventLog.getBlockHash());
+        log.setBlockNumber(eventLog.getBlockNumber());
+        log.setData(eventLog.getData());
+        log.setLogIndex(eventLog.getLogIndex());
+        log.setTopics(eventLog.getTopics());
+        log.setTransactionHash(eventLog.getTransactionHash());
+        log.setTransactionIndex(eventLog.getTransactionIndex());
+        return log;
     }
 
     private <T> void run(
@@ -98,17 +391,23 @@ public class JsonRpc2_0Rx {
         return ethPendingTransactionHashFlowable(pollingInterval)
                 .flatMap(
                         transactionHash ->
-                                abeyj.abeyGetTransactionByHash(transactionHash).flowable())
+                                abeyj.abeyGetTransactionByHash(transactionHash)
+                                        .flowable()
+                                        .subscribeOn(scheduler))
                 .filter(ethTransaction -> ethTransaction.getTransaction().isPresent())
                 .map(ethTransaction -> ethTransaction.getTransaction().get());
     }
 
     public Flowable<AbeyBlock> blockFlowable(boolean fullTransactionObjects, long pollingInterval) {
+        // Lookups run on the scheduler rather than on the thread delivering the hash, which for a
+        // subscription is the one that has to read their replies; blocks are still emitted in
+        // order
         return ethBlockHashFlowable(pollingInterval)
-                .flatMap(
+                .concatMapEager(
                         blockHash ->
                                 abeyj.abeyGetBlockByHash(blockHash, fullTransactionObjects)
-                                        .flowable());
+                                        .flowable()
+                                        .subscribeOn(scheduler));
     }
 
     public Flowable<AbeyBlock> replayBlocksFlowable(
@@ -150,10 +449,47 @@ public class JsonRpc2_0Rx {
             return Flowable.error(e);
         }
 
+        // Blocks are fetched eagerly up to the concurrency limit, but emitted strictly in order
         return Flowables.range(startBlockNumber, endBlockNumber, isAscending)
-                .map(DefaultBlockParameterNumber::new)
-                .map(number -> abeyj.abeyGetBlockByNumber(number, containsFullTransactionObjects))
-                .flatMap(Request::flowable);
+                .buffer(replayBatchSize)
+                .concatMapEager(
+                        numbers ->
+                                Flowable.fromCallable(
+                                                () ->
+                                                        getBlocksByNumber(
+                                                                numbers,
+                                                                containsFullTransactionObjects))
+                                        .subscribeOn(scheduler),
+                        replayConcurrency,
+                        1)
+                .concatMapIterable(blocks -> blocks)
+                .doOnNext(block -> replayMetrics.onBlock());
+    }
+
+    private List<AbeyBlock> getBlocksByNumber(
+            List<BigInteger> numbers, boolean containsFullTransactionObjects) throws IOException {
+        if (numbers.size() == 1) {
+            return Collections.singletonList(
+                    abeyj.abeyGetBlockByNumber(
+                                    new DefaultBlockParameterNumber(numbers.get(0)),
+                                    containsFullTransactionObjects)
+                            .send());
+        }
+
+        BatchRequest batchRequest = abeyj.newBatch();
+        for (BigInteger number : numbers) {
+            batchRequest.add(
+                    abeyj.abeyGetBlockByNumber(
+                            new DefaultBlockParameterNumber(number),
+                            containsFullTransactionObjects));
+        }
+
+        BatchResponse batchResponse = batchRequest.send();
+        List<AbeyBlock> blocks = new ArrayList<>(numbers.size());
+        for (Response<?> response : batchResponse.getResponses()) {
+            blocks.add((AbeyBlock) response);
+        }
+        return blocks;
     }
 
     public Flowable<Transaction> replayTransactionsFlowable(
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.rx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Throughput of the block replay Flowables of a {@link JsonRpc2_0Rx} instance. */
+public class ReplayMetrics {
+
+    private final AtomicLong blockCount = new AtomicLong();
+    private volatile long firstBlockNanos;
+    private volatile long lastBlockNanos;
+
+    void onBlock() {
+        long now = System.nanoTime();
+        if (blockCount.getAndIncrement() == 0) {
+            firstBlockNanos = now;
+        }
+        lastBlockNanos = now;
+    }
+
+    /** Total number of blocks emitted by replay Flowables. */
+    public long getBlockCount() {
+        return blockCount.get();
+    }
+
+    /** Average number of blocks emitted per second since the first replayed block. */
+    public double getBlocksPerSecond() {
+        long count = blockCount.get();
+        long elapsedNanos = lastBlockNanos - firstBlockNanos;
+        if (count < 2 || elapsedNanos <= 0) {
+            return 0;
+        }
+        return (count - 1) * 1_000_000_000.0 / elapsedNanos;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the hand-off between the WebSocket read thread and the threads that decode and
+ * deliver messages for a {@link WebSocketService}.
+ */
+public class DispatchMetrics {
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    void onEnqueue() {
+        queueDepth.incrementAndGet();
+    }
+
+    void onDequeue(long queuedNanos) {
+        queueDepth.decrementAndGet();
+        dispatchedCount.incrementAndGet();
+        totalQueueNanos.addAndGet(queuedNanos);
+        maxQueueNanos.accumulateAndGet(queuedNanos, Math::max);
+    }
+
+    /** Number of messages waiting to be decoded. */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /** Total number of messages handed to a decoding thread. */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /** Average time a message waited between being read and being decoded, in milliseconds. */
+    public double getAverageQueueTimeMillis() {
+        long count = dispatchedCount.get();
+        return count == 0 ? 0 : totalQueueNanos.get() / 1_000_000.0 / count;
+    }
+
+    /** Longest time a message waited between being read and being decoded, in milliseconds. */
+    public double getMaxQueueTimeMillis() {
+        return maxQueueNanos.get() / 1_000_000.0;
+    }
+}
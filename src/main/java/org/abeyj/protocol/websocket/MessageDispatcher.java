@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.utils.BoundedExecutorService;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs message handlers on a fixed set of single-threaded lanes. Handlers with equal routing keys
+ * always run on the same lane, so they run one at a time and in submission order, while handlers
+ * with different keys run in parallel.
+ *
+ * <p>Replies that need no ordering run on a separate pool through {@link
+ * #dispatchReply(Runnable)}. Subscriber code on a lane may send a request and wait for its reply;
+ * were that reply queued behind it on the same lane, the lane would wait for itself.
+ *
+ * <p>Every lane and the reply pool have a bounded queue. When it is full, dispatching blocks,
+ * which in turn stops the WebSocket read thread from reading further messages.
+ */
+class MessageDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    private final BoundedExecutorService[] lanes;
+    private final BoundedExecutorService replies;
+    private final DispatchMetrics metrics;
+
+    MessageDispatcher(int laneCount, int queueCapacity, DispatchMetrics metrics) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("At least one dispatch thread is required");
+        }
+        this.lanes = new BoundedExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] =
+                    new BoundedExecutorService(
+                            1,
+                            queueCapacity,
+                            BoundedExecutorService.OverflowPolicy.BLOCK,
+                            "abeyj-ws-dispatch-" + i);
+        }
+        this.replies =
+                new BoundedExecutorService(
+                        laneCount,
+                        queueCapacity,
+                        BoundedExecutorService.OverflowPolicy.BLOCK,
+                        "abeyj-ws-reply");
+        this.metrics = metrics;
+    }
+
+    /** Run a handler on the lane of its routing key, after the handlers before it with that key. */
+    void dispatch(Object routingKey, Runnable handler) {
+        execute(lanes[Math.floorMod(routingKey.hashCode(), lanes.length)], handler);
+    }
+
+    /** Run a handler that needs no ordering on the reply pool. */
+    void dispatchReply(Runnable handler) {
+        execute(replies, handler);
+    }
+
+    private void execute(BoundedExecutorService executor, Runnable handler) {
+        long enqueuedAt = System.nanoTime();
+        metrics.onEnqueue();
+        try {
+            executor.execute(
+                    () -> {
+                        metrics.onDequeue(System.nanoTime() - enqueuedAt);
+                        try {
+                            handler.run();
+                        } catch (RuntimeException e) {
+                            log.error("Failed to process WebSocket message", e);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            metrics.onDequeue(System.nanoTime() - enqueuedAt);
+            log.debug("Dropping WebSocket message, dispatcher was shut down");
+        }
+    }
+
+    void shutdown() {
+        for (BoundedExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        replies.shutdown();
+    }
+}
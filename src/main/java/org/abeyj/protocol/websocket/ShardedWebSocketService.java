@@ -0,0 +1,270 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.websocket;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.FilterRoutes;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.websocket.events.Notification;
+import org.abeyj.utils.BackpressurePolicy;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket service that keeps several connections, to one node or to several nodes, and spreads
+ * traffic across them.
+ *
+ * <p>Every connection is a {@link WebSocketService} of its own, with its own read thread and
+ * dispatch threads, so a large frame on one connection does not hold up replies on the others.
+ * Requests go to the connected shard with the fewest requests awaiting a reply, except requests
+ * for a filter, which go to the shard that installed the filter. A subscription lives on the
+ * connection it was opened on; new subscriptions go to the connected shard with the fewest
+ * subscriptions.
+ */
+public class ShardedWebSocketService implements AbeyjService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedWebSocketService.class);
+
+    private final List<Shard> shards;
+    private final FilterRoutes<Shard> filterRoutes = new FilterRoutes<>();
+
+    public ShardedWebSocketService(List<WebSocketService> services) {
+        if (services.isEmpty()) {
+            throw new IllegalArgumentException("At least one WebSocket service is required");
+        }
+        List<Shard> shards = new ArrayList<>(services.size());
+        for (WebSocketService service : services) {
+            shards.add(new Shard(service));
+        }
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    public ShardedWebSocketService(
+            List<String> serverUrls, int connectionsPerUrl, boolean includeRawResponses) {
+        this(createServices(serverUrls, connectionsPerUrl, includeRawResponses));
+    }
+
+    public ShardedWebSocketService(String serverUrl, int connections, boolean includeRawResponses) {
+        this(Collections.singletonList(serverUrl), connections, includeRawResponses);
+    }
+
+    private static List<WebSocketService> createServices(
+            List<String> serverUrls, int connectionsPerUrl, boolean includeRawResponses) {
+        if (connectionsPerUrl < 1) {
+            throw new IllegalArgumentException("At least one connection per URL is required");
+        }
+        List<WebSocketService> services = new ArrayList<>();
+        for (String serverUrl : serverUrls) {
+            for (int i = 0; i < connectionsPerUrl; i++) {
+                services.add(new WebSocketService(serverUrl, includeRawResponses));
+            }
+        }
+        return services;
+    }
+
+    /**
+     * Connect every shard. Shards that fail to connect are skipped until they are connected,
+     * either by a later call to this method or, with auto-reconnect enabled, by themselves.
+     *
+     * @throws ConnectException thrown if no shard could connect
+     */
+    public void connect() throws ConnectException {
+        ConnectException lastError = null;
+        int connected = 0;
+        for (Shard shard : shards) {
+            if (shard.isHealthy()) {
+                connected++;
+                continue;
+            }
+            try {
+                shard.service.connect();
+                connected++;
+            } catch (ConnectException e) {
+                log.warn("Failed to connect WebSocket shard", e);
+                lastError = e;
+            }
+        }
+
+        if (connected == 0) {
+            throw lastError;
+        }
+    }
+
+    /**
+     * Enable or disable automatic reconnection on every shard.
+     *
+     * @param autoReconnect true to reconnect automatically
+     * @see WebSocketService#setAutoReconnect(boolean)
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        for (Shard shard : shards) {
+            shard.service.setAutoReconnect(autoReconnect);
+        }
+    }
+
+    /**
+     * Set the backpressure policy applied to subscriptions on every shard.
+     *
+     * @param policy policy to apply
+     * @see WebSocketService#setBackpressurePolicy(BackpressurePolicy)
+     */
+    public void setBackpressurePolicy(BackpressurePolicy policy) {
+        for (Shard shard : shards) {
+            shard.service.setBackpressurePolicy(policy);
+        }
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        Shard shard = selectForRequest(filterRoutes.targetFor(request));
+        T response = shard.service.send(request, responseType);
+        filterRoutes.onReply(request, response, shard);
+        return response;
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(
+            Request request, Class<T> responseType) {
+        Shard shard = selectForRequest(filterRoutes.targetFor(request));
+        return shard.service
+                .sendAsync(request, responseType)
+                .whenComplete(
+                        (response, error) -> {
+                            if (error == null) {
+                                filterRoutes.onReply(request, response, shard);
+                            }
+                        });
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        Shard shard = selectForRequest(filterRoutes.targetFor(batchRequest));
+        BatchResponse response = shard.service.sendBatch(batchRequest);
+        filterRoutes.onReply(response, shard);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        Shard shard = selectForRequest(filterRoutes.targetFor(batchRequest));
+        return shard.service
+                .sendBatchAsync(batchRequest)
+                .whenComplete(
+                        (response, error) -> {
+                            if (error == null) {
+                                filterRoutes.onReply(response, shard);
+                            }
+                        });
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(
+            Request request, String unsubscribeMethod, Class<T> responseType) {
+        Shard shard = selectForSubscription();
+        return shard.service
+                .subscribe(request, unsubscribeMethod, responseType)
+                .doOnSubscribe(subscription -> shard.subscriptionCount.incrementAndGet())
+                .doFinally(shard.subscriptionCount::decrementAndGet);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Shard shard : shards) {
+            shard.service.close();
+        }
+    }
+
+    private Shard selectForRequest(Shard filterShard) {
+        if (filterShard != null) {
+            // A filter exists only on the node of the shard that installed it, even while that
+            // shard is reconnecting
+            return filterShard;
+        }
+
+        Shard best = null;
+        for (Shard shard : healthyOrAll()) {
+            if (best == null
+                    || shard.getPendingRequestCount() < best.getPendingRequestCount()) {
+                best = shard;
+            }
+        }
+        return best;
+    }
+
+    private Shard selectForSubscription() {
+        Shard best = null;
+        for (Shard shard : healthyOrAll()) {
+            if (best == null || shard.getSubscriptionCount() < best.getSubscriptionCount()) {
+                best = shard;
+            }
+        }
+        return best;
+    }
+
+    // While every shard is down, requests still go somewhere so that they fail or wait as
+    // the shard's own settings dictate
+    private List<Shard> healthyOrAll() {
+        List<Shard> healthy = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            if (shard.isHealthy()) {
+                healthy.add(shard);
+            }
+        }
+        return healthy.isEmpty() ? shards : healthy;
+    }
+
+    /** One connection of a {@link ShardedWebSocketService}. */
+    public static class Shard {
+        private final WebSocketService service;
+        private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+        Shard(WebSocketService service) {
+            this.service = service;
+        }
+
+        public WebSocketService getService() {
+            return service;
+        }
+
+        /** Whether the shard's connection is open and receives new traffic. */
+        public boolean isHealthy() {
+            return service.isConnected();
+        }
+
+        /** Number of requests sent over the shard that are waiting for a reply. */
+        public int getPendingRequestCount() {
+            return service.getPendingRequestCount();
+        }
+
+        /** Number of subscriptions opened on the shard and not yet disposed. */
+        public int getSubscriptionCount() {
+            return subscriptionCount.get();
+        }
+    }
+}
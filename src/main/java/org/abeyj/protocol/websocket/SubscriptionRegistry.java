@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscriptions of a {@link WebSocketService}, indexed both by the id of the subscription request
+ * awaiting its reply and by the subscription id the node returned.
+ *
+ * <p>Every subscription also knows its own request id and subscription id, so that it can be found
+ * and removed in constant time from either side. A subscription leaves the registry when it is
+ * disposed, when its subscription request fails or times out, and when the connection is closed
+ * for good.
+ */
+class SubscriptionRegistry {
+
+    // Subscriptions waiting for the reply to their subscription request
+    private final Map<Long, WebSocketSubscription<?>> pendingByRequestId =
+            new ConcurrentHashMap<>();
+    // Established subscriptions, by the subscription id the node assigned
+    private final Map<String, WebSocketSubscription<?>> activeBySubscriptionId =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Add a subscription whose subscription request is about to be sent.
+     *
+     * @param requestId id of the subscription request
+     * @param subscription the subscription
+     * @return false if the subscription was removed already and should not be sent
+     */
+    boolean addPending(long requestId, WebSocketSubscription<?> subscription) {
+        synchronized (subscription) {
+            if (subscription.isRemoved()) {
+                return false;
+            }
+            subscription.setRequestId(requestId);
+            pendingByRequestId.put(requestId, subscription);
+            return true;
+        }
+    }
+
+    boolean isPending(long requestId) {
+        return pendingByRequestId.containsKey(requestId);
+    }
+
+    WebSocketSubscription<?> getPending(long requestId) {
+        return pendingByRequestId.get(requestId);
+    }
+
+    WebSocketSubscription<?> getActive(String subscriptionId) {
+        return activeBySubscriptionId.get(subscriptionId);
+    }
+
+    /**
+     * Move a pending subscription to the established subscriptions.
+     *
+     * @param requestId id of the subscription request
+     * @param subscriptionId subscription id returned by the node
+     * @return false if the subscription was removed while its request was in flight, in which
+     *     case the caller should unsubscribe from the node
+     */
+    boolean establish(long requestId, String subscriptionId) {
+        WebSocketSubscription<?> subscription = pendingByRequestId.remove(requestId);
+        if (subscription == null) {
+            return false;
+        }
+        synchronized (subscription) {
+            if (subscription.isRemoved()) {
+                return false;
+            }
+            subscription.setSubscriptionId(subscriptionId);
+            activeBySubscriptionId.put(subscriptionId, subscription);
+            return true;
+        }
+    }
+
+    /**
+     * Remove a subscription whose subscription request failed or was never answered.
+     *
+     * @param requestId id of the subscription request
+     * @return the subscription, or null if the request is unknown
+     */
+    WebSocketSubscription<?> removePending(long requestId) {
+        WebSocketSubscription<?> subscription = pendingByRequestId.remove(requestId);
+        if (subscription != null) {
+            synchronized (subscription) {
+                subscription.markRemoved();
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * Remove an established subscription. A subscription whose request is still in flight is
+     * only marked as removed; it stays pending until the reply arrives, so that the subscription
+     * the node creates in the meantime can be cancelled.
+     *
+     * @param subscription the subscription
+     * @return the subscription id the node assigned, or null if it was not established
+     */
+    String remove(WebSocketSubscription<?> subscription) {
+        synchronized (subscription) {
+            subscription.markRemoved();
+            String subscriptionId = subscription.getSubscriptionId();
+            if (subscriptionId != null) {
+                activeBySubscriptionId.remove(subscriptionId, subscription);
+            }
+            return subscriptionId;
+        }
+    }
+
+    /**
+     * Take every established subscription out of the subscription id index, to subscribe them
+     * again under new subscription ids.
+     *
+     * @return the established subscriptions
+     */
+    List<WebSocketSubscription<?>> detachActive() {
+        List<WebSocketSubscription<?>> subscriptions = new ArrayList<>();
+        for (WebSocketSubscription<?> subscription : activeBySubscriptionId.values()) {
+            synchronized (subscription) {
+                String subscriptionId = subscription.getSubscriptionId();
+                if (subscriptionId != null
+                        && activeBySubscriptionId.remove(subscriptionId, subscription)) {
+                    subscription.setSubscriptionId(null);
+                    subscriptions.add(subscription);
+                }
+            }
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Remove every subscription.
+     *
+     * @return the subscriptions that were pending or established
+     */
+    List<WebSocketSubscription<?>> removeAll() {
+        List<WebSocketSubscription<?>> candidates = new ArrayList<>();
+        candidates.addAll(pendingByRequestId.values());
+        candidates.addAll(activeBySubscriptionId.values());
+
+        List<WebSocketSubscription<?>> subscriptions = new ArrayList<>(candidates.size());
+        for (WebSocketSubscription<?> subscription : candidates) {
+            synchronized (subscription) {
+                if (!subscription.isRemoved()) {
+                    remove(subscription);
+                    subscriptions.add(subscription);
+                }
+            }
+        }
+        pendingByRequestId.clear();
+        return subscriptions;
+    }
+
+    /** Number of subscriptions that are pending or established. */
+    int size() {
+        return pendingByRequestId.size() + activeBySubscriptionId.size();
+    }
+}
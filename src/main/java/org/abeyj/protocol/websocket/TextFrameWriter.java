@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.protocol.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
+import org.abeyj.utils.ByteBufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes outgoing messages as UTF-8 JSON straight into pooled buffers, one buffer per
+ * WebSocket frame, without building the message as a String first.
+ *
+ * <p>A message larger than one buffer becomes a text frame followed by continuation frames. The
+ * WebSocket library copies each payload while masking it, so the buffers go back to the pool as
+ * soon as the frames were handed over. For the same reason heap buffers are used: the masked copy
+ * is what reaches the socket, so direct memory would gain nothing.
+ */
+class TextFrameWriter {
+
+    // Payload size of a single frame
+    static final int DEFAULT_FRAGMENT_SIZE = 64 * 1024;
+    // Idle buffers kept per service
+    static final int DEFAULT_POOLED_BUFFERS = 32;
+
+    private final ObjectMapper objectMapper;
+    private final ByteBufferPool bufferPool;
+
+    TextFrameWriter(ObjectMapper objectMapper) {
+        this(objectMapper, new ByteBufferPool(DEFAULT_FRAGMENT_SIZE, DEFAULT_POOLED_BUFFERS));
+    }
+
+    TextFrameWriter(ObjectMapper objectMapper, ByteBufferPool bufferPool) {
+        this.objectMapper = objectMapper;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Serialize a message. The returned message must be closed to return its buffers to the pool.
+     *
+     * @param value object to serialize as JSON
+     * @return the serialized message
+     * @throws IOException if the object cannot be serialized
+     */
+    Message write(Object value) throws IOException {
+        Message message = new Message();
+        try {
+            objectMapper.writeValue(message.output, value);
+        } catch (IOException | RuntimeException e) {
+            message.close();
+            throw e;
+        }
+        return message;
+    }
+
+    /** A serialized message held in pooled buffers. */
+    final class Message implements Closeable {
+        private final List<ByteBuffer> buffers = new ArrayList<>(1);
+        private final OutputStream output = new BufferOutputStream();
+
+        /**
+         * Frames carrying the message, a text frame followed by a continuation frame for every
+         * further buffer. The frames share the buffers of this message and are only valid until
+         * it is closed.
+         */
+        List<Framedata> toFrames() {
+            List<Framedata> frames = new ArrayList<>(buffers.size());
+            for (int i = 0; i < buffers.size(); i++) {
+                DataFrame frame = i == 0 ? new TextFrame() : new ContinuousFrame();
+                frame.setPayload(content(buffers.get(i)));
+                frame.setFin(i == buffers.size() - 1);
+                frames.add(frame);
+            }
+            return frames;
+        }
+
+        int length() {
+            int length = 0;
+            for (ByteBuffer buffer : buffers) {
+                length += buffer.position();
+            }
+            return length;
+        }
+
+        /** The message as a String, for logging and for keeping a copy to send again. */
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length()];
+            int offset = 0;
+            for (ByteBuffer buffer : buffers) {
+                ByteBuffer content = content(buffer);
+                int size = content.remaining();
+                content.get(bytes, offset, size);
+                offset += size;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            for (ByteBuffer buffer : buffers) {
+                bufferPool.release(buffer);
+            }
+            buffers.clear();
+        }
+
+        private ByteBuffer content(ByteBuffer buffer) {
+            ByteBuffer content = buffer.duplicate();
+            content.flip();
+            return content;
+        }
+
+        private ByteBuffer writableBuffer() {
+            int last = buffers.size() - 1;
+            if (last >= 0 && buffers.get(last).hasRemaining()) {
+                return buffers.get(last);
+            }
+            ByteBuffer buffer = bufferPool.acquire();
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        // Jackson closes the target once it is done, which must not release the buffers yet
+        private class BufferOutputStream extends OutputStream {
+            @Override
+            public void write(int b) {
+                writableBuffer().put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                while (length > 0) {
+                    ByteBuffer buffer = writableBuffer();
+                    int chunk = Math.min(length, buffer.remaining());
+                    buffer.put(bytes, offset, chunk);
+                    offset += chunk;
+                    length -= chunk;
+                }
+            }
+        }
+    }
+}
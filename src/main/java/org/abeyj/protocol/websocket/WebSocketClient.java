@@ -41,6 +41,7 @@ public class WebSocketClient extends org.java_websocket.client.WebSocketClient {
     @Override
     public void onOpen(ServerHandshake serverHandshake) {
         log.debug("Opened WebSocket connection to {}", uri);
+        listenerOpt.ifPresent(WebSocketListener::onOpen);
     }
 
     @Override
@@ -28,4 +28,7 @@ public interface WebSocketListener {
     void onError(Exception e);
 
     void onClose();
+
+    /** Called when the connection has been opened. */
+    default void onOpen() {}
 }
@@ -12,6 +12,8 @@
  */
 package org.abeyj.protocol.websocket;
 
+import org.abeyj.utils.HashedWheelTimer;
+
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -22,6 +24,10 @@ import java.util.concurrent.CompletableFuture;
 class WebSocketRequest<T> {
     private CompletableFuture<T> onReply;
     private Class<T> responseType;
+    // Serialized request, kept so that it can be sent again after a reconnect
+    private volatile String payload;
+    private volatile boolean replayable;
+    private volatile HashedWheelTimer.Timeout timeout;
 
     public WebSocketRequest(CompletableFuture<T> onReply, Class<T> responseType) {
         this.onReply = onReply;
@@ -35,4 +41,31 @@ class WebSocketRequest<T> {
     public Class<T> getResponseType() {
         return responseType;
     }
+
+    String getPayload() {
+        return payload;
+    }
+
+    void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    boolean isReplayable() {
+        return replayable;
+    }
+
+    void setReplayable(boolean replayable) {
+        this.replayable = replayable;
+    }
+
+    void setTimeout(HashedWheelTimer.Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    void cancelTimeout() {
+        HashedWheelTimer.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
 }
@@ -12,11 +12,10 @@
  */
 package org.abeyj.protocol.websocket;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.subjects.BehaviorSubject;
@@ -28,19 +27,27 @@ import org.abeyj.protocol.core.BatchRequest;
 import org.abeyj.protocol.core.BatchResponse;
 import org.abeyj.protocol.core.Request;
 import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.core.RpcMethods;
 import org.abeyj.protocol.core.methods.response.AbeySubscribe;
 import org.abeyj.protocol.core.methods.response.AbeyUnsubscribe;
 import org.abeyj.protocol.websocket.events.Notification;
+import org.abeyj.utils.BackpressurePolicy;
+import org.abeyj.utils.HashedWheelTimer;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
@@ -53,31 +60,70 @@ import java.util.function.Consumer;
  * notifications stream.
  *
  * <p>To unsubscribe from a stream of notifications it should send another JSON-RPC request.
+ *
+ * <p>With {@link #setAutoReconnect(boolean)} enabled, a dropped connection is re-opened with
+ * exponential backoff instead of failing every subscription. Active subscriptions are established
+ * again and their new subscription ids mapped onto the existing streams, and read-only requests
+ * that were in flight are sent again once the connection is back. Other requests fail with an
+ * {@link IOException} as before.
+ *
+ * <p>Incoming messages are only inspected for their routing fields on the WebSocket read thread.
+ * Decoding and delivery happen on a small pool of dispatch threads; events of one subscription,
+ * and the reply that established it, are always delivered on the same thread and in order. Other
+ * replies run on a separate pool, and subscribing does not wait for the node's reply, so
+ * subscribers may send requests and open subscriptions from within their callbacks. See {@link
+ * #getDispatchMetrics()} for the time messages spend waiting to be decoded.
  */
 public class WebSocketService implements AbeyjService {
     private static final Logger log = LoggerFactory.getLogger(WebSocketService.class);
 
-    // Timeout for JSON-RPC requests
+    // Default timeout for JSON-RPC requests, in seconds
     static final long REQUEST_TIMEOUT = 60;
-    // replaced batch's next id
-    static final AtomicLong nextBatchId = new AtomicLong(0);
+    public static final long DEFAULT_RECONNECT_INITIAL_DELAY = 500;
+    public static final long DEFAULT_RECONNECT_MAX_DELAY = 30_000;
+
+    public static final int DEFAULT_DISPATCH_THREADS =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 1024;
 
     // WebSocket client
     private final WebSocketClient webSocketClient;
     private boolean shouldReConnect;
-    // Executor to schedule request timeouts
+    // Executor for reconnection attempts and for failing timed out requests
     private final ScheduledExecutorService executor;
     // Object mapper to map incoming JSON objects
     private final ObjectMapper objectMapper;
+    private final boolean includeRawResponses;
+    // Serializes outgoing messages into pooled buffers sent as WebSocket frames
+    private final TextFrameWriter frameWriter;
+    // Decodes and delivers incoming messages off the WebSocket read thread
+    private final MessageDispatcher dispatcher;
+    private final DispatchMetrics dispatchMetrics = new DispatchMetrics();
+    // Request timeouts, cancelled as soon as the reply arrives
+    private final HashedWheelTimer timeoutTimer = new HashedWheelTimer();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private volatile long requestTimeout = TimeUnit.SECONDS.toMillis(REQUEST_TIMEOUT);
+    private final Map<String, Long> timeoutForMethod = new ConcurrentHashMap<>();
+
+    private volatile BackpressurePolicy defaultBackpressurePolicy = BackpressurePolicy.unbounded();
+    private final Map<Class<?>, BackpressurePolicy> backpressurePolicyForType =
+            new ConcurrentHashMap<>();
+
+    private volatile boolean autoReconnect = false;
+    private volatile long reconnectInitialDelay = DEFAULT_RECONNECT_INITIAL_DELAY;
+    private volatile long reconnectMaxDelay = DEFAULT_RECONNECT_MAX_DELAY;
+    private volatile boolean reconnecting = false;
+    private volatile boolean closed = false;
+    private final AtomicInteger reconnectAttempts = new AtomicInteger(0);
+    // Guards the transition between the connected and reconnecting states
+    private final Object reconnectLock = new Object();
+    // Ids of replayable requests to send once the connection is re-established
+    private final Queue<Long> heldRequestIds = new ConcurrentLinkedQueue<>();
 
     // Map of a sent request id to objects necessary to process this request
     private Map<Long, WebSocketRequest<?>> requestForId = new ConcurrentHashMap<>();
-    // Map of a sent subscription request id to objects necessary to process
-    // subscription events
-    private Map<Long, WebSocketSubscription<?>> subscriptionRequestForId =
-            new ConcurrentHashMap<>();
-    // Map of a subscription id to objects necessary to process incoming events
-    private Map<String, WebSocketSubscription<?>> subscriptionForId = new ConcurrentHashMap<>();
+    // Subscriptions by subscription request id and by subscription id
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
 
     public WebSocketService(String serverUrl, boolean includeRawResponses) {
         this(new WebSocketClient(parseURI(serverUrl)), includeRawResponses);
@@ -87,13 +133,53 @@ public class WebSocketService implements AbeyjService {
         this(webSocketClient, Executors.newScheduledThreadPool(1), includeRawResponses);
     }
 
+    /**
+     * Creates a WebSocketService with a custom dispatch stage.
+     *
+     * @param webSocketClient WebSocket client
+     * @param includeRawResponses whether raw JSON should be kept on responses
+     * @param dispatchThreads number of threads decoding and delivering incoming messages
+     * @param dispatchQueueCapacity number of messages each dispatch thread may have queued before
+     *     reading from the socket is paused
+     */
+    public WebSocketService(
+            WebSocketClient webSocketClient,
+            boolean includeRawResponses,
+            int dispatchThreads,
+            int dispatchQueueCapacity) {
+        this(
+                webSocketClient,
+                Executors.newScheduledThreadPool(1),
+                includeRawResponses,
+                dispatchThreads,
+                dispatchQueueCapacity);
+    }
+
     WebSocketService(
             WebSocketClient webSocketClient,
             ScheduledExecutorService executor,
             boolean includeRawResponses) {
+        this(
+                webSocketClient,
+                executor,
+                includeRawResponses,
+                DEFAULT_DISPATCH_THREADS,
+                DEFAULT_DISPATCH_QUEUE_CAPACITY);
+    }
+
+    WebSocketService(
+            WebSocketClient webSocketClient,
+            ScheduledExecutorService executor,
+            boolean includeRawResponses,
+            int dispatchThreads,
+            int dispatchQueueCapacity) {
         this.webSocketClient = webSocketClient;
         this.executor = executor;
         this.objectMapper = ObjectMapperFactory.getObjectMapper(includeRawResponses);
+        this.includeRawResponses = includeRawResponses;
+        this.frameWriter = new TextFrameWriter(objectMapper);
+        this.dispatcher =
+                new MessageDispatcher(dispatchThreads, dispatchQueueCapacity, dispatchMetrics);
     }
 
     /**
@@ -116,6 +202,41 @@ public class WebSocketService implements AbeyjService {
         }
     }
 
+    /**
+     * Whether the connection is open and not in the middle of being re-established.
+     *
+     * @return true if requests are currently sent straight to the server
+     */
+    public boolean isConnected() {
+        return !reconnecting && webSocketClient.isOpen();
+    }
+
+    /**
+     * Re-open the connection automatically when it is lost, and restore subscriptions and
+     * read-only requests on the new connection.
+     *
+     * @param autoReconnect true to reconnect automatically
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Set the backoff between reconnection attempts. The delay starts at {@code initialDelay}
+     * and doubles with every failed attempt up to {@code maxDelay}, with random jitter so that
+     * many clients of one node do not reconnect in lock-step.
+     *
+     * @param initialDelay delay before the first attempt, in milliseconds
+     * @param maxDelay upper bound of the delay, in milliseconds
+     */
+    public void setReconnectDelay(long initialDelay, long maxDelay) {
+        if (initialDelay < 1 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Invalid reconnect delay");
+        }
+        this.reconnectInitialDelay = initialDelay;
+        this.reconnectMaxDelay = maxDelay;
+    }
+
     private void connectToWebSocket() throws InterruptedException, ConnectException {
         boolean connected =
                 shouldReConnect
@@ -150,6 +271,11 @@ public class WebSocketService implements AbeyjService {
                         onWebSocketClose();
                         onClose.run();
                     }
+
+                    @Override
+                    public void onOpen() {
+                        onWebSocketOpen();
+                    }
                 });
     }
 
@@ -172,10 +298,29 @@ public class WebSocketService implements AbeyjService {
     @Override
     public <T extends Response> CompletableFuture<T> sendAsync(
             Request request, Class<T> responseType) {
+        return sendAsync(
+                request, responseType, timeoutFor(request.getMethod()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a request with its own timeout, overriding the timeout configured for its method.
+     *
+     * @param request request to send
+     * @param responseType type of the response
+     * @param timeout time to wait for the reply before the request fails
+     * @param unit unit of timeout
+     * @param <T> type of the response
+     * @return future completed with the response
+     */
+    public <T extends Response> CompletableFuture<T> sendAsync(
+            Request request, Class<T> responseType, long timeout, TimeUnit unit) {
 
         CompletableFuture<T> result = new CompletableFuture<>();
         long requestId = request.getId();
-        requestForId.put(requestId, new WebSocketRequest<>(result, responseType));
+        WebSocketRequest<T> webSocketRequest = new WebSocketRequest<>(result, responseType);
+        webSocketRequest.setReplayable(isReplayable(request.getMethod()));
+        requestForId.put(requestId, webSocketRequest);
+        scheduleTimeout(requestId, webSocketRequest, unit.toMillis(timeout));
         try {
             sendRequest(request, requestId);
         } catch (IOException e) {
@@ -205,14 +350,17 @@ public class WebSocketService implements AbeyjService {
     public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest requests) {
         CompletableFuture<BatchResponse> result = new CompletableFuture<>();
 
-        // replace first batch elements's id to handle response
-        long requestId = nextBatchId.getAndIncrement();
+        // replace first batch elements's id to handle response, with an id no other request has
+        long requestId = Request.nextId();
         Request<?, ? extends Response<?>> firstRequest = requests.getRequests().get(0);
         long originId = firstRequest.getId();
         requests.getRequests().get(0).setId(requestId);
 
-        requestForId.put(
-                requestId, new WebSocketRequests(result, requests.getRequests(), originId));
+        WebSocketRequests webSocketRequests =
+                new WebSocketRequests(result, requests.getRequests(), originId);
+        webSocketRequests.setReplayable(isReplayable(requests));
+        requestForId.put(requestId, webSocketRequests);
+        scheduleTimeout(requestId, webSocketRequests, timeoutFor(requests));
 
         try {
             sendBatchRequest(requests, requestId);
@@ -223,58 +371,286 @@ public class WebSocketService implements AbeyjService {
         return result;
     }
 
-    private void sendRequest(Request request, long requestId) throws JsonProcessingException {
-        String payload = objectMapper.writeValueAsString(request);
-        log.debug("Sending request: {}", payload);
-        webSocketClient.send(payload);
-        setRequestTimeout(requestId);
+    private void sendRequest(Request request, long requestId) throws IOException {
+        try (TextFrameWriter.Message message = frameWriter.write(request)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Sending request: {}", message);
+            }
+            transmit(requestId, message);
+        }
+    }
+
+    private void sendBatchRequest(BatchRequest request, long requestId) throws IOException {
+        try (TextFrameWriter.Message message = frameWriter.write(request.getRequests())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Sending batch request: {}", message);
+            }
+            transmit(requestId, message);
+        }
+    }
+
+    private void transmit(long requestId, TextFrameWriter.Message message) throws IOException {
+        WebSocketRequest<?> request = requestForId.get(requestId);
+        if (autoReconnect && request != null && request.isReplayable()) {
+            // Kept to send the request again on a new connection
+            request.setPayload(message.toString());
+        }
+
+        synchronized (reconnectLock) {
+            if (reconnecting) {
+                if (request == null || !request.isReplayable()) {
+                    throw new IOException("WebSocket connection is being re-established");
+                }
+                log.debug("Holding request with id {} until reconnected", requestId);
+                heldRequestIds.add(requestId);
+                return;
+            }
+        }
+
+        try {
+            // All frames of the message go out under one lock, so concurrent messages never
+            // interleave their fragments
+            webSocketClient.sendFrame(message.toFrames());
+        } catch (WebsocketNotConnectedException e) {
+            throw new IOException("WebSocket is not connected", e);
+        }
+    }
+
+    /**
+     * Whether a request for the given method may be sent again on a new connection when the
+     * connection it was sent on is lost before the reply arrived. By default this holds for
+     * subscriptions and for methods that only read chain state.
+     *
+     * @param method JSON-RPC method name
+     * @return true if the request may be replayed
+     */
+    protected boolean isReplayable(String method) {
+        return RpcMethods.isRepeatable(method)
+                || (method != null && method.endsWith("_subscribe"));
+    }
+
+    private boolean isReplayable(BatchRequest batchRequest) {
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            if (!isReplayable(request.getMethod())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set how long to wait for the reply to a request before it fails, unless a different
+     * timeout is set for its method.
+     *
+     * @param timeout time to wait for a reply
+     * @param unit unit of timeout
+     */
+    public void setRequestTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.requestTimeout = unit.toMillis(timeout);
     }
 
-    private void sendBatchRequest(BatchRequest request, long requestId)
-            throws JsonProcessingException {
-        String payload = objectMapper.writeValueAsString(request.getRequests());
-        log.debug("Sending batch request: {}", payload);
-        webSocketClient.send(payload);
-        setRequestTimeout(requestId);
+    /**
+     * Set how long to wait for the reply to requests for a particular method, for instance a
+     * longer timeout for {@code abey_getLogs} over wide block ranges.
+     *
+     * @param method JSON-RPC method name
+     * @param timeout time to wait for a reply
+     * @param unit unit of timeout
+     */
+    public void setMethodTimeout(String method, long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        timeoutForMethod.put(method, unit.toMillis(timeout));
     }
 
-    private void setRequestTimeout(long requestId) {
-        executor.schedule(
-                () ->
-                        closeRequest(
-                                requestId,
-                                new IOException(
-                                        String.format("Request with id %d timed out", requestId))),
-                REQUEST_TIMEOUT,
-                TimeUnit.SECONDS);
+    private long timeoutFor(String method) {
+        Long timeout = method != null ? timeoutForMethod.get(method) : null;
+        return timeout != null ? timeout : requestTimeout;
+    }
+
+    // A batch waits as long as its slowest member is allowed to
+    private long timeoutFor(BatchRequest batchRequest) {
+        long timeout = 0;
+        for (Request<?, ?> request : batchRequest.getRequests()) {
+            timeout = Math.max(timeout, timeoutFor(request.getMethod()));
+        }
+        return timeout;
+    }
+
+    private void scheduleTimeout(long requestId, WebSocketRequest<?> request, long timeoutMillis) {
+        request.setTimeout(
+                timeoutTimer.newTimeout(
+                        () -> {
+                            if (!requestForId.remove(requestId, request)) {
+                                return;
+                            }
+                            timedOutCount.incrementAndGet();
+                            completeExceptionally(
+                                    request,
+                                    new IOException(
+                                            String.format(
+                                                    "Request with id %d timed out", requestId)));
+                        },
+                        timeoutMillis,
+                        TimeUnit.MILLISECONDS));
+    }
+
+    // Keep caller code off the timer thread, which must never be held up
+    private void completeExceptionally(WebSocketRequest<?> request, Exception e) {
+        try {
+            executor.execute(() -> request.getOnReply().completeExceptionally(e));
+        } catch (RejectedExecutionException rejected) {
+            request.getOnReply().completeExceptionally(e);
+        }
     }
 
     void closeRequest(long requestId, Exception e) {
-        CompletableFuture result = requestForId.get(requestId).getOnReply();
-        requestForId.remove(requestId);
-        result.completeExceptionally(e);
+        WebSocketRequest<?> request = removeRequest(requestId);
+        if (request != null) {
+            request.getOnReply().completeExceptionally(e);
+        }
+    }
+
+    private WebSocketRequest<?> removeRequest(long requestId) {
+        WebSocketRequest<?> request = requestForId.remove(requestId);
+        if (request != null) {
+            request.cancelTimeout();
+        }
+        return request;
+    }
+
+    /** Number of requests waiting for a reply. */
+    public int getPendingRequestCount() {
+        return requestForId.size();
+    }
+
+    /** Total number of requests that failed because no reply arrived in time. */
+    public long getTimedOutRequestCount() {
+        return timedOutCount.get();
+    }
+
+    public DispatchMetrics getDispatchMetrics() {
+        return dispatchMetrics;
     }
 
     void onWebSocketMessage(String messageStr) throws IOException {
-        JsonNode replyJson = parseToTree(messageStr);
-
-        if (isReply(replyJson)) {
-            processRequestReply(messageStr, replyJson);
-        } else if (isBatchReply(replyJson)) {
-            processBatchRequestReply(messageStr, (ArrayNode) replyJson);
-        } else if (isSubscriptionEvent(replyJson)) {
-            processSubscriptionEvent(messageStr, replyJson);
+        MessageRoute route = peekRoute(messageStr);
+        Runnable handler =
+                () -> {
+                    try {
+                        processMessage(messageStr, route);
+                    } catch (IOException e) {
+                        log.error("Failed to process message '{}'", messageStr, e);
+                    }
+                };
+        if (route.isOrdered()) {
+            dispatcher.dispatch(route.key, handler);
         } else {
-            throw new IOException("Unknown message type");
+            dispatcher.dispatchReply(handler);
+        }
+    }
+
+    /**
+     * Find what kind of message this is and which dispatch thread handles it, reading no further
+     * into the message than necessary. The payload itself is bound later, on the dispatch thread.
+     *
+     * <p>Events are keyed by their subscription id. So is the reply to a subscription request, so
+     * that it is handled before the first event of the subscription. Other replies are keyed by
+     * their request id, batch replies by the id of their first element. Only events and
+     * subscription replies need their order kept; other replies go to the dispatcher's reply
+     * pool.
+     */
+    private MessageRoute peekRoute(String messageStr) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(messageStr)) {
+            JsonToken token = parser.nextToken();
+            boolean batch = token == JsonToken.START_ARRAY;
+            if (batch) {
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                return MessageRoute.UNKNOWN;
+            }
+
+            Long id = null;
+            String result = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("id".equals(field)) {
+                    if (value != JsonToken.VALUE_NUMBER_INT) {
+                        throw new IOException(
+                                String.format(
+                                        "'id' expected to be long, but it is: '%s'",
+                                        parser.getText()));
+                    }
+                    id = parser.getLongValue();
+                    if (batch || !subscriptions.isPending(id)) {
+                        return MessageRoute.reply(id, batch, id);
+                    }
+                } else if ("result".equals(field) && value == JsonToken.VALUE_STRING) {
+                    result = parser.getText();
+                } else if ("params".equals(field) && value == JsonToken.START_OBJECT) {
+                    String subscriptionId = peekSubscriptionId(parser);
+                    if (subscriptionId != null && id == null) {
+                        return MessageRoute.event(subscriptionId);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+
+                if (id != null && result != null) {
+                    return MessageRoute.reply(id, false, result);
+                }
+            }
+
+            if (id != null) {
+                return MessageRoute.reply(id, batch, id);
+            }
+            return batch
+                    ? MessageRoute.error("'id' field is missing in the reply")
+                    : MessageRoute.UNKNOWN;
+        } catch (IOException e) {
+            throw new IOException("Failed to parse incoming WebSocket message", e);
+        }
+    }
+
+    private static String peekSubscriptionId(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("subscription".equals(field) && value == JsonToken.VALUE_STRING) {
+                return parser.getText();
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private void processMessage(String messageStr, MessageRoute route) throws IOException {
+        switch (route.type) {
+            case REPLY:
+                processRequestReply(messageStr, route.id);
+                break;
+            case BATCH_REPLY:
+                processBatchRequestReply(messageStr, route.id);
+                break;
+            case EVENT:
+                processSubscriptionEvent(messageStr, route.subscriptionId);
+                break;
+            default:
+                throw new IOException(route.error);
         }
     }
 
     @SuppressWarnings("unchecked")
-    private void processRequestReply(String replyStr, JsonNode replyJson) throws IOException {
-        long replyId = getReplyId(replyJson);
+    private void processRequestReply(String replyStr, long replyId) throws IOException {
         WebSocketRequest request = getAndRemoveRequest(replyId);
         try {
-            Object reply = objectMapper.convertValue(replyJson, request.getResponseType());
+            Object reply = readMessage(replyStr, request.getResponseType());
             // Instead of sending a reply to a caller asynchronously we need to process it here
             // to avoid race conditions we need to modify state of this class.
             if (reply instanceof AbeySubscribe) {
@@ -282,68 +658,65 @@ public class WebSocketService implements AbeyjService {
             }
 
             sendReplyToListener(request, reply);
-        } catch (IllegalArgumentException e) {
+        } catch (JsonProcessingException e) {
             sendExceptionToListener(replyStr, request, e);
         }
     }
 
-    private void processBatchRequestReply(String replyStr, ArrayNode replyJson) throws IOException {
-        long replyId = getReplyId(replyJson.get(0));
+    private void processBatchRequestReply(String replyStr, long replyId) throws IOException {
         WebSocketRequests webSocketRequests = (WebSocketRequests) getAndRemoveRequest(replyId);
-        try {
-            // rollback request id of first batch elt
-            ((ObjectNode) replyJson.get(0)).put("id", webSocketRequests.getOriginId());
-
-            List<Request<?, ? extends Response<?>>> requests = webSocketRequests.getRequests();
-            List<Response<?>> responses = new ArrayList<>(replyJson.size());
-
-            for (int i = 0; i < replyJson.size(); i++) {
-                Response<?> response =
-                        objectMapper.treeToValue(
-                                replyJson.get(i), requests.get(i).getResponseType());
-                responses.add(response);
+        List<Request<?, ? extends Response<?>>> requests = webSocketRequests.getRequests();
+        List<Response<?>> responses = new ArrayList<>(requests.size());
+
+        // Bind every element straight from the token stream, without building a tree first
+        try (JsonParser parser = createBatchParser(replyStr)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int i = responses.size();
+                if (i >= requests.size()) {
+                    throw new IOException(
+                            String.format(
+                                    "Batch reply has more elements than the %d requests sent",
+                                    requests.size()));
+                }
+                responses.add(objectMapper.readValue(parser, requests.get(i).getResponseType()));
             }
-
-            sendReplyToListener(webSocketRequests, new BatchResponse(requests, responses));
-        } catch (IllegalArgumentException e) {
+        } catch (JsonProcessingException e) {
             sendExceptionToListener(replyStr, webSocketRequests, e);
+            return;
         }
-    }
-
-    @SuppressWarnings("unchecked")
-    private void processSubscriptionResponse(long replyId, AbeySubscribe reply) throws IOException {
-        WebSocketSubscription subscription = subscriptionRequestForId.get(replyId);
-        processSubscriptionResponse(
-                reply, subscription.getSubject(), subscription.getResponseType());
-    }
 
-    private <T extends Notification<?>> void processSubscriptionResponse(
-            AbeySubscribe subscriptionReply, BehaviorSubject<T> subject, Class<T> responseType) {
-        if (!subscriptionReply.hasError()) {
-            establishSubscription(subject, responseType, subscriptionReply);
-        } else {
-            reportSubscriptionError(subject, subscriptionReply);
+        // rollback request id of first batch elt
+        if (!responses.isEmpty()) {
+            responses.get(0).setId(webSocketRequests.getOriginId());
         }
+        sendReplyToListener(webSocketRequests, new BatchResponse(requests, responses));
     }
 
-    private <T extends Notification<?>> void establishSubscription(
-            BehaviorSubject<T> subject, Class<T> responseType, AbeySubscribe subscriptionReply) {
-        log.debug("Subscribed to RPC events with id {}", subscriptionReply.getSubscriptionId());
-        subscriptionForId.put(
-                subscriptionReply.getSubscriptionId(),
-                new WebSocketSubscription<>(subject, responseType));
-    }
+    private void processSubscriptionResponse(long replyId, AbeySubscribe reply) {
+        if (reply.hasError()) {
+            WebSocketSubscription<?> subscription = subscriptions.removePending(replyId);
+            if (subscription != null) {
+                reportSubscriptionError(subscription.getSubject(), reply);
+            }
+            return;
+        }
 
-    private <T extends Notification<?>> String getSubscriptionId(BehaviorSubject<T> subject) {
-        return subscriptionForId.entrySet().stream()
-                .filter(entry -> entry.getValue().getSubject() == subject)
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
+        String subscriptionId = reply.getSubscriptionId();
+        WebSocketSubscription<?> subscription = subscriptions.getPending(replyId);
+        if (subscription == null) {
+            log.warn("Received subscription id {} for an unknown subscription", subscriptionId);
+        } else if (subscriptions.establish(replyId, subscriptionId)) {
+            log.debug("Subscribed to RPC events with id {}", subscriptionId);
+        } else {
+            // Disposed while the subscription request was in flight
+            log.debug("Cancelling disposed subscription with id {}", subscriptionId);
+            unsubscribeFromEventsStream(subscriptionId, subscription.getUnsubscribeMethod());
+        }
     }
 
-    private <T extends Notification<?>> void reportSubscriptionError(
-            BehaviorSubject<T> subject, AbeySubscribe subscriptionReply) {
+    private void reportSubscriptionError(
+            BehaviorSubject<?> subject, AbeySubscribe subscriptionReply) {
         Response.Error error = subscriptionReply.getError();
         log.error("Subscription request returned error: {}", error.getMessage());
         subject.onError(
@@ -358,7 +731,7 @@ public class WebSocketService implements AbeyjService {
     }
 
     private void sendExceptionToListener(
-            String replyStr, WebSocketRequest request, IllegalArgumentException e) {
+            String replyStr, WebSocketRequest request, JsonProcessingException e) {
         request.getOnReply()
                 .completeExceptionally(
                         new IOException(
@@ -368,72 +741,47 @@ public class WebSocketService implements AbeyjService {
                                 e));
     }
 
-    private void processSubscriptionEvent(String replyStr, JsonNode replyJson) {
+    @SuppressWarnings("unchecked")
+    private void processSubscriptionEvent(String replyStr, String subscriptionId)
+            throws IOException {
         log.debug("Processing event: {}", replyStr);
-        String subscriptionId = extractSubscriptionId(replyJson);
-        WebSocketSubscription subscription = subscriptionForId.get(subscriptionId);
+        WebSocketSubscription subscription = subscriptions.getActive(subscriptionId);
 
         if (subscription != null) {
-            sendEventToSubscriber(replyJson, subscription);
+            Object event = readMessage(replyStr, subscription.getResponseType());
+            subscription.getSubject().onNext(event);
         } else {
             log.warn("No subscriber for WebSocket event with subscription id {}", subscriptionId);
         }
     }
 
-    private String extractSubscriptionId(JsonNode replyJson) {
-        return replyJson.get("params").get("subscription").asText();
-    }
-
-    @SuppressWarnings("unchecked")
-    private void sendEventToSubscriber(JsonNode replyJson, WebSocketSubscription subscription) {
-        Object event = objectMapper.convertValue(replyJson, subscription.getResponseType());
-        subscription.getSubject().onNext(event);
-    }
-
-    private boolean isReply(JsonNode replyJson) {
-        return replyJson.has("id");
-    }
-
-    private boolean isBatchReply(JsonNode replyJson) {
-        return replyJson.isArray();
-    }
-
-    private boolean isSubscriptionEvent(JsonNode replyJson) {
-        return replyJson.has("method");
+    private <T> T readMessage(String messageStr, Class<T> type) throws IOException {
+        if (includeRawResponses) {
+            // The raw response deserializer rewinds the input, which needs a resettable stream
+            return objectMapper.readValue(
+                    new ByteArrayInputStream(messageStr.getBytes(StandardCharsets.UTF_8)), type);
+        }
+        return objectMapper.readValue(messageStr, type);
     }
 
-    private JsonNode parseToTree(String replyStr) throws IOException {
-        try {
-            return objectMapper.readTree(replyStr);
-        } catch (IOException e) {
-            throw new IOException("Failed to parse incoming WebSocket message", e);
+    private JsonParser createBatchParser(String messageStr) throws IOException {
+        if (includeRawResponses) {
+            // Rewinding would read past the current element, so batch elements are bound
+            // without a raw input source and get an empty raw response
+            return objectMapper.getFactory().createParser(messageStr.toCharArray());
         }
+        return objectMapper.getFactory().createParser(messageStr);
     }
 
     private WebSocketRequest getAndRemoveRequest(long id) throws IOException {
-        if (!requestForId.containsKey(id)) {
+        WebSocketRequest request = removeRequest(id);
+        if (request == null) {
             throw new IOException(
                     String.format("Received reply for unexpected request id: %d", id));
         }
-        WebSocketRequest request = requestForId.get(id);
-        requestForId.remove(id);
         return request;
     }
 
-    private long getReplyId(JsonNode replyJson) throws IOException {
-        JsonNode idField = replyJson.get("id");
-        if (idField == null) {
-            throw new IOException("'id' field is missing in the reply");
-        }
-
-        if (!idField.isIntegralNumber()) {
-            throw new IOException(
-                    String.format("'id' expected to be long, but it is: '%s'", idField.asText()));
-        }
-
-        return idField.longValue();
-    }
-
     private static URI parseURI(String serverUrl) {
         try {
             return new URI(serverUrl);
@@ -445,42 +793,95 @@ public class WebSocketService implements AbeyjService {
     @Override
     public <T extends Notification<?>> Flowable<T> subscribe(
             Request request, String unsubscribeMethod, Class<T> responseType) {
+        return subscribe(
+                request, unsubscribeMethod, responseType, backpressurePolicyFor(responseType));
+    }
+
+    /**
+     * Subscribe to a stream of notifications with an explicit backpressure policy, overriding the
+     * policy configured for the notification type.
+     *
+     * @param request subscription request
+     * @param unsubscribeMethod method used to cancel the subscription
+     * @param responseType type of the notifications
+     * @param backpressurePolicy what to do with notifications the subscriber is not ready for
+     * @param <T> type of the notifications
+     * @return a Flowable of notifications
+     */
+    public <T extends Notification<?>> Flowable<T> subscribe(
+            Request request,
+            String unsubscribeMethod,
+            Class<T> responseType,
+            BackpressurePolicy backpressurePolicy) {
         // We can't use usual Observer since we can call "onError"
         // before first client is subscribed and we need to
         // preserve it
         BehaviorSubject<T> subject = BehaviorSubject.create();
 
-        // We need to subscribe synchronously, since if we return
-        // an Flowable to a client before we got a reply
-        // a client can unsubscribe before we know a subscription
-        // id and this can cause a race condition
-        subscribeToEventsStream(request, subject, responseType);
+        // The subscription request is sent without waiting for its reply, so that subscribing
+        // from a dispatch thread cannot wait on that same thread. A client that unsubscribes
+        // before the reply arrives is handled by the registry, which cancels the subscription
+        // once the node confirms it
+        WebSocketSubscription<T> subscription =
+                new WebSocketSubscription<>(subject, responseType, request);
+        subscription.setUnsubscribeMethod(unsubscribeMethod);
+        subscribeToEventsStream(request, subscription);
+
+        return backpressurePolicy.apply(
+                subject.doOnDispose(() -> closeSubscription(subscription))
+                        .toFlowable(BackpressureStrategy.MISSING),
+                responseType);
+    }
+
+    /**
+     * Set the backpressure policy of subscriptions whose notification type has no policy of its
+     * own. By default notifications are buffered without bound.
+     *
+     * @param backpressurePolicy the policy
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.defaultBackpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * Set the backpressure policy of subscriptions to one type of notification, for instance
+     * {@link BackpressurePolicy#latest()} for new heads.
+     *
+     * @param notificationType type of the notifications
+     * @param backpressurePolicy the policy
+     */
+    public void setBackpressurePolicy(
+            Class<? extends Notification<?>> notificationType,
+            BackpressurePolicy backpressurePolicy) {
+        backpressurePolicyForType.put(notificationType, backpressurePolicy);
+    }
 
-        return subject.doOnDispose(() -> closeSubscription(subject, unsubscribeMethod))
-                .toFlowable(BackpressureStrategy.BUFFER);
+    private BackpressurePolicy backpressurePolicyFor(Class<?> notificationType) {
+        return backpressurePolicyForType.getOrDefault(notificationType, defaultBackpressurePolicy);
     }
 
-    private <T extends Notification<?>> void subscribeToEventsStream(
-            Request request, BehaviorSubject<T> subject, Class<T> responseType) {
+    private void subscribeToEventsStream(
+            Request request, WebSocketSubscription<?> subscription) {
 
-        subscriptionRequestForId.put(
-                request.getId(), new WebSocketSubscription<>(subject, responseType));
-        try {
-            send(request, AbeySubscribe.class);
-        } catch (IOException e) {
-            log.error("Failed to subscribe to RPC events with request id {}", request.getId());
-            subject.onError(e);
-        }
+        subscriptions.addPending(request.getId(), subscription);
+        sendAsync(request, AbeySubscribe.class)
+                .exceptionally(
+                        throwable -> {
+                            log.error(
+                                    "Failed to subscribe to RPC events with request id {}",
+                                    request.getId());
+                            if (subscriptions.removePending(request.getId()) != null) {
+                                subscription.getSubject().onError(throwable);
+                            }
+                            return null;
+                        });
     }
 
-    private <T extends Notification<?>> void closeSubscription(
-            BehaviorSubject<T> subject, String unsubscribeMethod) {
-        String subscriptionId = getSubscriptionId(subject);
+    private void closeSubscription(WebSocketSubscription<?> subscription) {
+        String subscriptionId = subscriptions.remove(subscription);
+        // A subscription that is not established yet is cancelled once the node confirms it
         if (subscriptionId != null) {
-            subscriptionForId.remove(subscriptionId);
-            unsubscribeFromEventsStream(subscriptionId, unsubscribeMethod);
-        } else {
-            log.warn("Trying to unsubscribe from a non-existing subscription. Race condition?");
+            unsubscribeFromEventsStream(subscriptionId, subscription.getUnsubscribeMethod());
         }
     }
 
@@ -511,37 +912,220 @@ public class WebSocketService implements AbeyjService {
 
     @Override
     public void close() {
+        closed = true;
         webSocketClient.close();
         executor.shutdown();
+        dispatcher.shutdown();
+        timeoutTimer.stop();
     }
 
     void onWebSocketClose() {
-        closeOutstandingRequests();
-        closeOutstandingSubscriptions();
+        if (autoReconnect && !closed) {
+            synchronized (reconnectLock) {
+                if (!reconnecting) {
+                    reconnecting = true;
+                    holdOutstandingRequests();
+                }
+            }
+            scheduleReconnect();
+        } else {
+            closeOutstandingRequests();
+            closeOutstandingSubscriptions();
+        }
+    }
+
+    void onWebSocketOpen() {
+        List<Long> replayIds = new ArrayList<>();
+        synchronized (reconnectLock) {
+            if (!reconnecting) {
+                return;
+            }
+            reconnecting = false;
+            for (Long id = heldRequestIds.poll(); id != null; id = heldRequestIds.poll()) {
+                replayIds.add(id);
+            }
+        }
+
+        log.info("Re-established WebSocket connection after {} attempt(s)", reconnectAttempts);
+        reconnectAttempts.set(0);
+        replayRequests(replayIds);
+        resubscribe();
+    }
+
+    private void scheduleReconnect() {
+        int attempt = reconnectAttempts.getAndIncrement();
+        long delay = reconnectDelay(attempt);
+        log.info("WebSocket connection lost, reconnecting in {} ms", delay);
+        try {
+            executor.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Not reconnecting, WebSocket service was shut down");
+        }
+    }
+
+    private long reconnectDelay(int attempt) {
+        long delay = reconnectInitialDelay << Math.min(attempt, 16);
+        delay = Math.min(delay, reconnectMaxDelay);
+        // Randomise the upper half of the delay to spread out clients of a restarted node
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void reconnect() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            // A failed attempt closes the connection again, which schedules the next attempt
+            webSocketClient.reconnect();
+        } catch (RuntimeException e) {
+            log.warn("Failed to start WebSocket reconnection", e);
+            scheduleReconnect();
+        }
+    }
+
+    private void replayRequests(List<Long> requestIds) {
+        for (Long requestId : requestIds) {
+            WebSocketRequest<?> request = requestForId.get(requestId);
+            if (request == null || request.getPayload() == null) {
+                // Timed out while the connection was down
+                continue;
+            }
+
+            log.debug("Replaying request with id {}", requestId);
+            try {
+                webSocketClient.send(request.getPayload());
+            } catch (WebsocketNotConnectedException e) {
+                // Lost the connection again, the requests are held again when it closes
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send the subscription requests of every active subscription again. Events that arrive under
+     * the new subscription ids are delivered to the existing subjects.
+     */
+    @SuppressWarnings("unchecked")
+    private void resubscribe() {
+        for (WebSocketSubscription<?> subscription : subscriptions.detachActive()) {
+            Request<?, ?> original = subscription.getRequest();
+            if (original == null) {
+                subscriptions.remove(subscription);
+                subscription.getSubject().onError(new IOException("Connection was closed"));
+                continue;
+            }
+
+            Request<Object, AbeySubscribe> request =
+                    new Request<>(
+                            original.getMethod(),
+                            (List<Object>) original.getParams(),
+                            this,
+                            AbeySubscribe.class);
+            if (!subscriptions.addPending(request.getId(), subscription)) {
+                // Disposed in the meantime
+                continue;
+            }
+            sendAsync(request, AbeySubscribe.class)
+                    .exceptionally(
+                            throwable -> {
+                                log.error(
+                                        "Failed to re-establish subscription with request id {}",
+                                        request.getId());
+                                subscriptions.removePending(request.getId());
+                                subscription.getSubject().onError(throwable);
+                                return null;
+                            });
+        }
+    }
+
+    /**
+     * Keep replayable requests that were in flight on the lost connection for replay, and fail the
+     * others.
+     */
+    private void holdOutstandingRequests() {
+        for (Map.Entry<Long, WebSocketRequest<?>> entry : requestForId.entrySet()) {
+            WebSocketRequest<?> request = entry.getValue();
+            if (request.isReplayable()) {
+                if (request.getPayload() != null) {
+                    heldRequestIds.add(entry.getKey());
+                }
+            } else if (requestForId.remove(entry.getKey(), request)) {
+                request.cancelTimeout();
+                request.getOnReply()
+                        .completeExceptionally(new IOException("Connection was closed"));
+            }
+        }
     }
 
     private void closeOutstandingRequests() {
-        requestForId
-                .values()
-                .forEach(
-                        request ->
-                                request.getOnReply()
-                                        .completeExceptionally(
-                                                new IOException("Connection was closed")));
+        for (Long requestId : requestForId.keySet()) {
+            closeRequest(requestId, new IOException("Connection was closed"));
+        }
     }
 
     private void closeOutstandingSubscriptions() {
-        subscriptionForId
-                .values()
-                .forEach(
-                        subscription ->
-                                subscription
-                                        .getSubject()
-                                        .onError(new IOException("Connection was closed")));
+        for (WebSocketSubscription<?> subscription : subscriptions.removeAll()) {
+            subscription.getSubject().onError(new IOException("Connection was closed"));
+        }
+    }
+
+    /** Number of subscriptions that are established or waiting for the node to confirm them. */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
     }
 
     // Method visible for unit-tests
     boolean isWaitingForReply(long requestId) {
         return requestForId.containsKey(requestId);
     }
+
+    /** Kind and routing key of an incoming message, found before the message is bound. */
+    private static final class MessageRoute {
+
+        enum Type {
+            REPLY,
+            BATCH_REPLY,
+            EVENT,
+            INVALID
+        }
+
+        static final MessageRoute UNKNOWN = error("Unknown message type");
+
+        final Type type;
+        final Object key;
+        final long id;
+        final String subscriptionId;
+        final String error;
+
+        private MessageRoute(
+                Type type, Object key, long id, String subscriptionId, String error) {
+            this.type = type;
+            this.key = key;
+            this.id = id;
+            this.subscriptionId = subscriptionId;
+            this.error = error;
+        }
+
+        /**
+         * Whether the message must be handled in order with others of its key: events, and the
+         * reply to a subscription request, which is keyed like the subscription's events.
+         */
+        boolean isOrdered() {
+            return type == Type.EVENT || (type == Type.REPLY && key instanceof String);
+        }
+
+        static MessageRoute reply(long id, boolean batch, Object key) {
+            return new MessageRoute(batch ? Type.BATCH_REPLY : Type.REPLY, key, id, null, null);
+        }
+
+        static MessageRoute event(String subscriptionId) {
+            return new MessageRoute(Type.EVENT, subscriptionId, 0, subscriptionId, null);
+        }
+
+        static MessageRoute error(String error) {
+            // Invalid messages are only logged, any dispatch thread will do
+            return new MessageRoute(Type.INVALID, 0L, 0, null, error);
+        }
+    }
 }
@@ -13,6 +13,7 @@
 package org.abeyj.protocol.websocket;
 
 import io.reactivex.subjects.BehaviorSubject;
+import org.abeyj.protocol.core.Request;
 
 /**
  * Objects necessary to process a new item received via a WebSocket subscription.
@@ -22,6 +23,13 @@ import io.reactivex.subjects.BehaviorSubject;
 public class WebSocketSubscription<T> {
     private BehaviorSubject<T> subject;
     private Class<T> responseType;
+    private Request<?, ?> request;
+
+    // Bookkeeping of the subscription registry, guarded by this
+    private long requestId = -1;
+    private String subscriptionId;
+    private boolean removed;
+    private String unsubscribeMethod;
 
     /**
      * Creates WebSocketSubscription.
@@ -34,6 +42,19 @@ public class WebSocketSubscription<T> {
         this.responseType = responseType;
     }
 
+    /**
+     * Creates WebSocketSubscription that can be re-established after a reconnect.
+     *
+     * @param subject used to send new data items to listeners
+     * @param responseType type of a data item returned by a WebSocket subscription
+     * @param request subscription request, sent again to re-establish the subscription
+     */
+    public WebSocketSubscription(
+            BehaviorSubject<T> subject, Class<T> responseType, Request<?, ?> request) {
+        this(subject, responseType);
+        this.request = request;
+    }
+
     public BehaviorSubject<T> getSubject() {
         return subject;
     }
@@ -41,4 +62,40 @@ public class WebSocketSubscription<T> {
     public Class<T> getResponseType() {
         return responseType;
     }
+
+    public Request<?, ?> getRequest() {
+        return request;
+    }
+
+    long getRequestId() {
+        return requestId;
+    }
+
+    void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    void setSubscriptionId(String subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    void markRemoved() {
+        removed = true;
+    }
+
+    String getUnsubscribeMethod() {
+        return unsubscribeMethod;
+    }
+
+    void setUnsubscribeMethod(String unsubscribeMethod) {
+        this.unsubscribeMethod = unsubscribeMethod;
+    }
 }
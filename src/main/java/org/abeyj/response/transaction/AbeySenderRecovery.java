@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.response.transaction;
+
+import org.abeyj.crypto.Hash;
+import org.abeyj.utils.WeightedLruCache;
+
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recovers the sender and payment signer of signed Abey transactions, many at a time.
+ *
+ * <p>{@link #recoverAll(List)} splits the transactions across a {@link ForkJoinPool}, so
+ * verifying a whole block uses every core. Each recovery is a double scalar multiplication whose
+ * table for the generator BouncyCastle computes once and keeps. Results are cached by transaction
+ * hash, so transactions seen before, such as those of a block that was already checked while
+ * pending, are not recovered again.
+ */
+public class AbeySenderRecovery {
+
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    // Transactions per task below which a batch is not split further
+    private static final int SEQUENTIAL_THRESHOLD = 16;
+
+    private final ForkJoinPool pool;
+    private final WeightedLruCache<String, Senders> sendersForHash;
+
+    public AbeySenderRecovery() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates an AbeySenderRecovery.
+     *
+     * @param pool pool to recover batches on
+     * @param cacheSize maximum number of transactions whose senders are cached
+     */
+    public AbeySenderRecovery(ForkJoinPool pool, int cacheSize) {
+        this.pool = pool;
+        this.sendersForHash = new WeightedLruCache<>(cacheSize, cacheSize, senders -> 1);
+    }
+
+    /**
+     * Recover the senders of one signed transaction on the calling thread.
+     *
+     * @param signedTransaction signed transaction in hex
+     * @return the senders
+     * @throws SignatureException if the transaction is not signed or a signer could not be
+     *     recovered
+     */
+    public Senders recover(String signedTransaction) throws SignatureException {
+        String transactionHash = Hash.sha3(signedTransaction);
+        Senders senders = sendersForHash.get(transactionHash);
+        if (senders != null) {
+            return senders;
+        }
+
+        AbeyRawTransaction transaction = AbeyTransactionDecoder.decode(signedTransaction);
+        if (!(transaction instanceof SignedAbeyRawTransaction)) {
+            throw new SignatureException("Transaction is not signed: " + transactionHash);
+        }
+        SignedAbeyRawTransaction signedAbeyRawTransaction = (SignedAbeyRawTransaction) transaction;
+        senders =
+                new Senders(
+                        transactionHash,
+                        signedAbeyRawTransaction.getFrom(),
+                        signedAbeyRawTransaction.getPaymentSigner());
+        sendersForHash.put(transactionHash, senders);
+        return senders;
+    }
+
+    /**
+     * Recover the senders of signed transactions in parallel.
+     *
+     * @param signedTransactions signed transactions in hex
+     * @return the senders, in the order of the transactions
+     * @throws SignatureException if any transaction is not signed or a signer could not be
+     *     recovered
+     */
+    public List<Senders> recoverAll(List<String> signedTransactions) throws SignatureException {
+        Senders[] result = new Senders[signedTransactions.size()];
+        try {
+            pool.invoke(new RecoverTask(signedTransactions, result, 0, result.length));
+        } catch (RecoveryFailure e) {
+            throw e.getCause();
+        }
+        return Arrays.asList(result);
+    }
+
+    public void invalidateAll() {
+        sendersForHash.invalidateAll();
+    }
+
+    /** Addresses recovered from one signed transaction. */
+    public static final class Senders {
+        private final String transactionHash;
+        private final String from;
+        private final String payment;
+
+        Senders(String transactionHash, String from, String payment) {
+            this.transactionHash = transactionHash;
+            this.from = from;
+            this.payment = payment;
+        }
+
+        public String getTransactionHash() {
+            return transactionHash;
+        }
+
+        public String getFrom() {
+            return from;
+        }
+
+        /** Address of the account that signed with payment, or null if there is none. */
+        public String getPayment() {
+            return payment;
+        }
+    }
+
+    private final class RecoverTask extends RecursiveAction {
+        private final List<String> signedTransactions;
+        private final Senders[] result;
+        private final int from;
+        private final int to;
+
+        RecoverTask(List<String> signedTransactions, Senders[] result, int from, int to) {
+            this.signedTransactions = signedTransactions;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        result[i] = recover(signedTransactions.get(i));
+                    } catch (SignatureException e) {
+                        throw new RecoveryFailure(e);
+                    }
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new RecoverTask(signedTransactions, result, from, middle),
+                        new RecoverTask(signedTransactions, result, middle, to));
+            }
+        }
+    }
+
+    // Carries a SignatureException out of a fork-join task
+    private static final class RecoveryFailure extends RuntimeException {
+        RecoveryFailure(SignatureException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SignatureException getCause() {
+            return (SignatureException) super.getCause();
+        }
+    }
+}
@@ -55,8 +55,22 @@ public class AbeyTransactionDecoder {
                             Numeric.toBigInt(((RlpString) values.getValues().get(10)).getBytes()),
                             32);
             final Sign.SignatureData signatureData = new Sign.SignatureData(v, r, s);
+            // transactions with payment carry the signature of the payment account after it
+            final Sign.SignatureData paymentSignatureData =
+                    values.getValues().size() >= 14 ? decodeSignatureData(values, 11) : null;
             return new SignedAbeyRawTransaction(
-                    nonce, gasPrice, gasLimit, to, value, data,fee,payment ,signatureData);
+                    nonce, gasPrice, gasLimit, to, value, data,fee,payment ,signatureData,
+                    paymentSignatureData);
         }
     }
+
+    private static Sign.SignatureData decodeSignatureData(RlpList values, int offset) {
+        final byte[] v = ((RlpString) values.getValues().get(offset)).getBytes();
+        final byte[] r = ((RlpString) values.getValues().get(offset + 1)).getBytes();
+        final byte[] s = ((RlpString) values.getValues().get(offset + 2)).getBytes();
+        return new Sign.SignatureData(
+                v,
+                Numeric.toBytesPadded(Numeric.toBigInt(r), 32),
+                Numeric.toBytesPadded(Numeric.toBigInt(s), 32));
+    }
 }
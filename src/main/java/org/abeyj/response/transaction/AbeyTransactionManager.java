@@ -3,6 +3,7 @@ package org.abeyj.response.transaction;
 import org.abeyj.AbeyjRequest;
 import org.abeyj.response.AbeySendTransaction;
 import org.abeyj.crypto.Credentials;
+import org.abeyj.crypto.CredentialsCache;
 import org.abeyj.crypto.Sign;
 import org.abeyj.utils.Numeric;
 
@@ -11,6 +12,8 @@ public class AbeyTransactionManager {
     public AbeyjRequest abeyjRequest;
     public int chainId;
 
+    private CredentialsCache credentialsCache = new CredentialsCache();
+
     private AbeyTransactionManager() {
 
     }
@@ -20,18 +23,44 @@ public class AbeyTransactionManager {
         this.chainId = chainId;
     }
 
+    /**
+     * @param abeyjRequest     request client
+     * @param chainId          chain id
+     * @param credentialsCache cache of the credentials of private keys, may be shared
+     */
+    public AbeyTransactionManager(AbeyjRequest abeyjRequest, int chainId,
+                                  CredentialsCache credentialsCache) {
+        this.abeyjRequest = abeyjRequest;
+        this.chainId = chainId;
+        this.credentialsCache = credentialsCache;
+    }
+
+    public CredentialsCache getCredentialsCache() {
+        return credentialsCache;
+    }
+
     public String signWithFromPrivateKey(AbeyRawTransaction abeyRawTransaction, String fromPrivateKey) {
         String signedTxWithFrom = null;
         try {
-            Credentials credentials_from = Credentials.create(fromPrivateKey);
-            byte[] signedMessage = AbeyTransactionEncoder.signMessageFrom(abeyRawTransaction, chainId, credentials_from);
-            signedTxWithFrom = Numeric.toHexString(signedMessage);
+            Credentials credentials_from = credentialsCache.get(fromPrivateKey);
+            signedTxWithFrom = signWithFrom(abeyRawTransaction, credentials_from);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return signedTxWithFrom;
     }
 
+    /**
+     * @param abeyRawTransaction trueTransaction info
+     * @param fromCredentials    tx from credentials
+     * @return transaction singed with from credentials, called signedTxWithFrom
+     */
+    public String signWithFrom(AbeyRawTransaction abeyRawTransaction, Credentials fromCredentials) {
+        byte[] signedMessage = AbeyTransactionEncoder.signMessageFrom(
+                abeyRawTransaction, chainId, fromCredentials);
+        return Numeric.toHexString(signedMessage);
+    }
+
     /**
      * @param signedTxWithFrom  transaction singed with from privatekey,called signedTxWithFrom
      * @param paymentPrivateKey payment privateKey
@@ -40,25 +69,56 @@ public class AbeyTransactionManager {
     public String signWithPaymentPrivateKey(String signedTxWithFrom, String paymentPrivateKey) {
         String signedTxWithPayment = null;
         try {
-            Credentials credentials_payment = Credentials.create(paymentPrivateKey);
+            Credentials credentials_payment = credentialsCache.get(paymentPrivateKey);
             System.out.println("sendPaymentTransaction payment address: " + credentials_payment.getAddress());
-
-            //ͨ��rawTransaction�����������Ϣ������������ǩ��rsv
-            SignedAbeyRawTransaction signtrueRawTransaction = (SignedAbeyRawTransaction) AbeyTransactionDecoder.decode(signedTxWithFrom);
-            Sign.SignatureData decode_signatureData = signtrueRawTransaction.getSignatureData();
-            AbeyRawTransaction decode_abeyRawTransaction = new AbeyRawTransaction(signtrueRawTransaction);
-
-            byte[] signedMessage = AbeyTransactionEncoder.
-                    signMessage_payment(decode_abeyRawTransaction, decode_signatureData,
-                            chainId, credentials_payment);
-
-            signedTxWithPayment = Numeric.toHexString(signedMessage);
+            signedTxWithPayment = signWithPayment(signedTxWithFrom, credentials_payment);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return signedTxWithPayment;
     }
 
+    /**
+     * @param signedTxWithFrom   transaction singed with from privatekey,called signedTxWithFrom
+     * @param paymentCredentials payment credentials
+     * @return transaction singed with payment credentials based on signedTxWithFrom
+     */
+    public String signWithPayment(String signedTxWithFrom, Credentials paymentCredentials) {
+        //ͨ��rawTransaction�����������Ϣ������������ǩ��rsv
+        SignedAbeyRawTransaction signtrueRawTransaction = (SignedAbeyRawTransaction) AbeyTransactionDecoder.decode(signedTxWithFrom);
+        return signWithPayment(signtrueRawTransaction, paymentCredentials);
+    }
+
+    /**
+     * sign a transaction that is already decoded with payment
+     *
+     * @param signedAbeyRawTransaction transaction singed with from privatekey
+     * @param paymentCredentials       payment credentials
+     * @return transaction singed with payment credentials
+     */
+    public String signWithPayment(SignedAbeyRawTransaction signedAbeyRawTransaction,
+                                  Credentials paymentCredentials) {
+        return signWithPayment(new AbeyRawTransaction(signedAbeyRawTransaction),
+                signedAbeyRawTransaction.getSignatureData(), paymentCredentials);
+    }
+
+    /**
+     * sign with payment without decoding, for callers that still hold the raw transaction and the
+     * signature of from
+     *
+     * @param abeyRawTransaction trueTransaction info
+     * @param fromSignatureData  eip155 signature of from
+     * @param paymentCredentials payment credentials
+     * @return transaction singed with from and payment
+     */
+    public String signWithPayment(AbeyRawTransaction abeyRawTransaction,
+                                  Sign.SignatureData fromSignatureData,
+                                  Credentials paymentCredentials) {
+        byte[] signedMessage = AbeyTransactionEncoder.signMessage_payment(
+                abeyRawTransaction, fromSignatureData, chainId, paymentCredentials);
+        return Numeric.toHexString(signedMessage);
+    }
+
     /**
      * sign with payment and send transction
      *
@@ -72,6 +132,11 @@ public class AbeyTransactionManager {
         return abeySendTransaction;
     }
 
+    public AbeySendTransaction signWithPaymentAndSend(String signedTxWithFrom, Credentials paymentCredentials) {
+        String signedTxWithPayment = signWithPayment(signedTxWithFrom, paymentCredentials);
+        return abeyjRequest.abeySendRawTransaction(signedTxWithPayment);
+    }
+
 
     /**
      * sign with from and payment private
@@ -82,8 +147,12 @@ public class AbeyTransactionManager {
      */
     public String signWithFromAndPayment(AbeyRawTransaction abeyRawTransaction,
                                          String fromPrivateKey, String paymentPrivateKey) {
-        Credentials fromCredentials = Credentials.create(fromPrivateKey);
-        Credentials paymentCredentials = Credentials.create(paymentPrivateKey);
+        return signWithFromAndPayment(abeyRawTransaction,
+                credentialsCache.get(fromPrivateKey), credentialsCache.get(paymentPrivateKey));
+    }
+
+    public String signWithFromAndPayment(AbeyRawTransaction abeyRawTransaction,
+                                         Credentials fromCredentials, Credentials paymentCredentials) {
         byte[] signedMessage = AbeyTransactionEncoder.signMessage_fromAndPayment(
                 abeyRawTransaction, chainId, fromCredentials, paymentCredentials);
         String signedTxWithPayment = Numeric.toHexString(signedMessage);
@@ -92,11 +161,15 @@ public class AbeyTransactionManager {
 
     public AbeySendTransaction signWithFromPaymentAndSend(AbeyRawTransaction abeyRawTransaction,
                                                           String fromPrivateKey, String paymentPrivateKey) {
-        Credentials fromCredentials = Credentials.create(fromPrivateKey);
-        Credentials paymentCredentials = Credentials.create(paymentPrivateKey);
-        byte[] signedMessage = AbeyTransactionEncoder.signMessage_fromAndPayment(
-                abeyRawTransaction, chainId, fromCredentials, paymentCredentials);
-        String signedWithFromPayment = Numeric.toHexString(signedMessage);
+        return signWithFromPaymentAndSend(abeyRawTransaction,
+                credentialsCache.get(fromPrivateKey), credentialsCache.get(paymentPrivateKey));
+    }
+
+    public AbeySendTransaction signWithFromPaymentAndSend(AbeyRawTransaction abeyRawTransaction,
+                                                          Credentials fromCredentials,
+                                                          Credentials paymentCredentials) {
+        String signedWithFromPayment = signWithFromAndPayment(
+                abeyRawTransaction, fromCredentials, paymentCredentials);
         AbeySendTransaction abeySendTransaction = abeyjRequest.abeySendRawTransaction(signedWithFromPayment);
         return abeySendTransaction;
     }
@@ -12,14 +12,19 @@
  */
 package org.abeyj.response.transaction;
 
+import org.abeyj.crypto.Hash;
+import org.abeyj.crypto.Keys;
 import org.abeyj.crypto.Sign;
 import org.abeyj.crypto.SignatureDataOperations;
+import org.abeyj.utils.Numeric;
 
 import java.math.BigInteger;
+import java.security.SignatureException;
 
 public class SignedAbeyRawTransaction extends AbeyRawTransaction implements SignatureDataOperations {
 
     private final Sign.SignatureData signatureData;
+    private final Sign.SignatureData paymentSignatureData;
 
     public SignedAbeyRawTransaction(
             BigInteger nonce,
@@ -31,14 +36,58 @@ public class SignedAbeyRawTransaction extends AbeyRawTransaction implements Sign
             BigInteger fee,
             String payment,
             Sign.SignatureData signatureData) {
+        this(nonce, gasPrice, gasLimit, to, value, data, fee, payment, signatureData, null);
+    }
+
+    public SignedAbeyRawTransaction(
+            BigInteger nonce,
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            String to,
+            BigInteger value,
+            String data,
+            BigInteger fee,
+            String payment,
+            Sign.SignatureData signatureData,
+            Sign.SignatureData paymentSignatureData) {
         super(nonce, gasPrice, gasLimit, to, value, data,fee,payment);
         this.signatureData = signatureData;
+        this.paymentSignatureData = paymentSignatureData;
     }
 
     public Sign.SignatureData getSignatureData() {
         return signatureData;
     }
 
+    /** Signature of the payment account, or null if the transaction was not signed with payment. */
+    public Sign.SignatureData getPaymentSignatureData() {
+        return paymentSignatureData;
+    }
+
+    /**
+     * Recover the address of the account that signed with payment.
+     *
+     * @return the payment signer address, or null if the transaction was not signed with payment
+     * @throws SignatureException if the address could not be recovered
+     */
+    public String getPaymentSigner() throws SignatureException {
+        if (paymentSignatureData == null) {
+            return null;
+        }
+        Long chainId = getChainId();
+        if (chainId == null) {
+            throw new SignatureException("Payment signatures require a chain id");
+        }
+
+        byte[] encodedTransaction = AbeyTransactionEncoder.encodeP(this, signatureData, chainId);
+        BigInteger v = Numeric.toBigInt(paymentSignatureData.getV());
+        Sign.SignatureData signatureDataV =
+                new Sign.SignatureData(
+                        getRealV(v), paymentSignatureData.getR(), paymentSignatureData.getS());
+        BigInteger key = Sign.signedMessageHashToKey(Hash.sha3(encodedTransaction), signatureDataV);
+        return "0x" + Keys.getAddress(key);
+    }
+
     @Override
     public byte[] getEncodedTransaction(Long chainId) {
         if (null == chainId) {
@@ -34,6 +34,8 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static org.abeyj.utils.RevertReasonExtractor.extractRevertReason;
@@ -359,6 +361,46 @@ public abstract class Contract extends ManagedTransaction {
                         gasProvider.getGasLimit(funcName),
                         constructor);
 
+        return checkStatus(receipt, data);
+    }
+
+    /**
+     * Execute a transaction without holding a thread while waiting for its receipt.
+     *
+     * @param data to send in transaction
+     * @param weiValue in Wei to send in transaction
+     * @param funcName name of the function, used to look up the gas price and limit
+     * @param constructor whether the transaction deploys a contract
+     * @return future completed with the receipt, or with a {@link TransactionException} if the
+     *     transaction failed
+     */
+    CompletableFuture<TransactionReceipt> executeTransactionAsync(
+            String data, BigInteger weiValue, String funcName, boolean constructor) {
+        return sendAsync(
+                        contractAddress,
+                        data,
+                        weiValue,
+                        gasProvider.getGasPrice(funcName),
+                        gasProvider.getGasLimit(funcName),
+                        constructor)
+                .thenApply(
+                        receipt -> {
+                            try {
+                                return checkStatus(receipt, data);
+                            } catch (TransactionException | IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        });
+    }
+
+    private CompletableFuture<TransactionReceipt> executeTransactionAsync(
+            Function function, BigInteger weiValue) {
+        return executeTransactionAsync(
+                FunctionEncoder.encode(function), weiValue, function.getName(), false);
+    }
+
+    private TransactionReceipt checkStatus(TransactionReceipt receipt, String data)
+            throws TransactionException, IOException {
         if (!receipt.isStatusOK()) {
             throw new TransactionException(
                     String.format(
@@ -394,12 +436,18 @@ public abstract class Contract extends ManagedTransaction {
 
     protected RemoteFunctionCall<TransactionReceipt> executeRemoteCallTransaction(
             Function function) {
-        return new RemoteFunctionCall<>(function, () -> executeTransaction(function));
+        return new RemoteFunctionCall<>(
+                function,
+                () -> executeTransaction(function),
+                () -> executeTransactionAsync(function, BigInteger.ZERO));
     }
 
     protected RemoteFunctionCall<TransactionReceipt> executeRemoteCallTransaction(
             Function function, BigInteger weiValue) {
-        return new RemoteFunctionCall<>(function, () -> executeTransaction(function, weiValue));
+        return new RemoteFunctionCall<>(
+                function,
+                () -> executeTransaction(function, weiValue),
+                () -> executeTransactionAsync(function, weiValue));
     }
 
     private static <T extends Contract> T create(
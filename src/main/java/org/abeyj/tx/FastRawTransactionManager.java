@@ -13,7 +13,11 @@
 package org.abeyj.tx;
 
 import org.abeyj.crypto.Credentials;
+import org.abeyj.crypto.Hash;
+import org.abeyj.crypto.RawTransaction;
 import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.core.methods.response.AbeySendTransaction;
+import org.abeyj.tx.exceptions.TxHashMismatchException;
 import org.abeyj.tx.response.TransactionReceiptProcessor;
 
 import java.io.IOException;
@@ -22,24 +26,33 @@ import java.math.BigInteger;
 /**
  * Simple RawTransactionManager derivative that manages nonces to facilitate multiple transactions
  * per block.
+ *
+ * <p>Nonces come from a {@link NonceManager}, which can be shared by the managers of many
+ * accounts. A nonce whose transaction could not be signed, or is rejected by the node, is handed
+ * back to it, so that a failed submission does not leave a gap. When sending fails without a reply
+ * the transaction may still have reached the node, so its nonce is {@link
+ * NonceManager#markUnknown marked unknown} and only handed out again once the node is found not to
+ * know the transaction.
  */
 public class FastRawTransactionManager extends RawTransactionManager {
 
-    private volatile BigInteger nonce = BigInteger.valueOf(-1);
+    private final NonceManager nonceManager;
 
     public FastRawTransactionManager(Abeyj abeyj, Credentials credentials, long chainId) {
         super(abeyj, credentials, chainId);
+        this.nonceManager = new NonceManager(abeyj);
     }
 
     public FastRawTransactionManager(Abeyj abeyj, Credentials credentials) {
         super(abeyj, credentials);
+        this.nonceManager = new NonceManager(abeyj);
     }
 
     public FastRawTransactionManager(
             Abeyj abeyj,
             Credentials credentials,
             TransactionReceiptProcessor transactionReceiptProcessor) {
-        super(abeyj, credentials, ChainId.NONE, transactionReceiptProcessor);
+        this(abeyj, credentials, ChainId.NONE, transactionReceiptProcessor);
     }
 
     public FastRawTransactionManager(
@@ -47,29 +60,129 @@ public class FastRawTransactionManager extends RawTransactionManager {
             Credentials credentials,
             long chainId,
             TransactionReceiptProcessor transactionReceiptProcessor) {
+        this(abeyj, credentials, chainId, transactionReceiptProcessor, new NonceManager(abeyj));
+    }
+
+    /**
+     * Creates a FastRawTransactionManager drawing nonces from a shared NonceManager.
+     *
+     * @param abeyj Abeyj instance
+     * @param credentials credentials of the sending account
+     * @param chainId chain id, or {@link ChainId#NONE}
+     * @param transactionReceiptProcessor processor waiting for receipts
+     * @param nonceManager source of nonces, may be shared with other managers
+     */
+    public FastRawTransactionManager(
+            Abeyj abeyj,
+            Credentials credentials,
+            long chainId,
+            TransactionReceiptProcessor transactionReceiptProcessor,
+            NonceManager nonceManager) {
         super(abeyj, credentials, chainId, transactionReceiptProcessor);
+        this.nonceManager = nonceManager;
     }
 
     @Override
-    protected synchronized BigInteger getNonce() throws IOException {
-        if (nonce.signum() == -1) {
-            // obtain lock
-            nonce = super.getNonce();
-        } else {
-            nonce = nonce.add(BigInteger.ONE);
+    protected BigInteger getNonce() throws IOException {
+        return nonceManager.reserve(getFromAddress()).getNonce();
+    }
+
+    @Override
+    public AbeySendTransaction sendTransaction(
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            String to,
+            String data,
+            BigInteger value,
+            boolean constructor)
+            throws IOException {
+
+        NonceManager.Reservation reservation = nonceManager.reserve(getFromAddress());
+
+        RawTransaction rawTransaction =
+                RawTransaction.createTransaction(
+                        reservation.getNonce(), gasPrice, gasLimit, to, value, data);
+
+        return signAndSend(rawTransaction, reservation);
+    }
+
+    @Override
+    public AbeySendTransaction sendTransactionEIP1559(
+            BigInteger gasPremium,
+            BigInteger feeCap,
+            BigInteger gasLimit,
+            String to,
+            String data,
+            BigInteger value,
+            boolean constructor)
+            throws IOException {
+
+        NonceManager.Reservation reservation = nonceManager.reserve(getFromAddress());
+
+        RawTransaction rawTransaction =
+                RawTransaction.createTransaction(
+                        reservation.getNonce(),
+                        null,
+                        gasLimit,
+                        to,
+                        value,
+                        data,
+                        gasPremium,
+                        feeCap);
+
+        return signAndSend(rawTransaction, reservation);
+    }
+
+    private AbeySendTransaction signAndSend(
+            RawTransaction rawTransaction, NonceManager.Reservation reservation)
+            throws IOException {
+        String hexValue;
+        try {
+            hexValue = sign(rawTransaction);
+        } catch (RuntimeException e) {
+            nonceManager.release(reservation);
+            throw e;
         }
-        return nonce;
+
+        AbeySendTransaction abeySendTransaction;
+        try {
+            abeySendTransaction = send(hexValue);
+        } catch (TxHashMismatchException e) {
+            // The node accepted a transaction, the nonce is used
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            nonceManager.markUnknown(reservation, Hash.sha3(hexValue));
+            throw e;
+        }
+
+        if (abeySendTransaction == null) {
+            nonceManager.markUnknown(reservation, Hash.sha3(hexValue));
+        } else if (abeySendTransaction.hasError()) {
+            nonceManager.handleError(reservation, abeySendTransaction.getError());
+        }
+        return abeySendTransaction;
+    }
+
+    public NonceManager getNonceManager() {
+        return nonceManager;
     }
 
+    /** The last nonce handed out by the counter of this account, or -1 before the first one. */
     public BigInteger getCurrentNonce() {
-        return nonce;
+        BigInteger next = nonceManager.getNextNonce(getFromAddress());
+        return next == null ? BigInteger.valueOf(-1) : next.subtract(BigInteger.ONE);
     }
 
-    public synchronized void resetNonce() throws IOException {
-        nonce = super.getNonce();
+    public void resetNonce() throws IOException {
+        nonceManager.resync(getFromAddress());
     }
 
-    public synchronized void setNonce(BigInteger value) {
-        nonce = value;
+    /**
+     * Set the last nonce used, so that the next transaction uses the nonce after it.
+     *
+     * @param value last nonce used
+     */
+    public void setNonce(BigInteger value) {
+        nonceManager.setNextNonce(getFromAddress(), value.add(BigInteger.ONE));
     }
 }
@@ -21,6 +21,7 @@ import org.abeyj.protocol.exceptions.TransactionException;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
 
 /** Generic transaction manager. */
 public abstract class ManagedTransaction {
@@ -128,6 +129,18 @@ public abstract class ManagedTransaction {
                 gasPrice, gasLimit, to, data, value, constructor);
     }
 
+    protected CompletableFuture<TransactionReceipt> sendAsync(
+            String to,
+            String data,
+            BigInteger value,
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            boolean constructor) {
+
+        return transactionManager.executeTransactionAsync(
+                gasPrice, gasLimit, to, data, value, constructor);
+    }
+
     protected String call(String to, String data, DefaultBlockParameter defaultBlockParameter)
             throws IOException {
 
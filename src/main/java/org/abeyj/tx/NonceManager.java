@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.tx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.core.DefaultBlockParameterName;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.core.methods.response.AbeyGetTransactionCount;
+import org.abeyj.protocol.core.methods.response.AbeyTransaction;
+import org.abeyj.utils.Async;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out transaction nonces for any number of accounts without a round trip per transaction.
+ *
+ * <p>The first nonce of an account is the account's transaction count in the pending pool, later
+ * nonces come from an atomic counter per account, so threads sending for different accounts, or
+ * for the same account, never wait on each other. A nonce whose transaction did not reach the node
+ * is {@link #release released} and handed out again before any new nonce, which closes the gap it
+ * would otherwise leave. Errors showing that the counter fell behind the node, such as "nonce too
+ * low", move it forward to the pending count.
+ *
+ * <p>The counter never moves backwards on its own: the pending count leaves out nonces that other
+ * threads reserved but did not send yet, and nonces the node holds behind a gap, so starting over
+ * from it would hand those out a second time. A transaction that was sent without a reply is
+ * {@link #markUnknown marked unknown} instead. Its nonce is checked against the node by transaction
+ * hash once a delay has passed, and only handed out again if the node does not know it.
+ *
+ * <p>One instance can be shared by several transaction managers, see {@link
+ * FastRawTransactionManager#FastRawTransactionManager(Abeyj, org.abeyj.crypto.Credentials, long,
+ * org.abeyj.tx.response.TransactionReceiptProcessor, NonceManager)}.
+ */
+public class NonceManager {
+
+    private static final Logger log = LoggerFactory.getLogger(NonceManager.class);
+
+    /** Default delay in seconds before the nonce of a transaction of unknown outcome is checked. */
+    public static final long DEFAULT_RECONCILE_DELAY = 15;
+
+    private final Abeyj abeyj;
+    private final Map<String, AtomicReference<Generation>> generationForAddress =
+            new ConcurrentHashMap<>();
+
+    private volatile long reconcileDelay = TimeUnit.SECONDS.toMillis(DEFAULT_RECONCILE_DELAY);
+
+    public NonceManager(Abeyj abeyj) {
+        this.abeyj = abeyj;
+    }
+
+    /**
+     * Set how long to wait after a transaction was {@link #markUnknown marked unknown} before
+     * checking whether the node received it.
+     *
+     * @param delay time to wait
+     * @param unit unit of delay
+     */
+    public void setReconcileDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.reconcileDelay = unit.toMillis(delay);
+    }
+
+    /**
+     * Reserve the next nonce of an account. Every reservation must end in the transaction being
+     * sent, in {@link #release(Reservation)}, in {@link #handleError(Reservation, Response.Error)}
+     * or in {@link #markUnknown(Reservation, String)}.
+     *
+     * @param address account address
+     * @return the reservation
+     * @throws IOException if the first nonce of the account could not be fetched
+     */
+    public Reservation reserve(String address) throws IOException {
+        AtomicReference<Generation> current = currentFor(address);
+        Generation generation = current.get();
+        if (generation == null) {
+            current.compareAndSet(null, new Generation(fetchPendingNonce(address)));
+            generation = current.get();
+        }
+
+        Long released = generation.released.pollFirst();
+        long nonce = released != null ? released : generation.next.getAndIncrement();
+        return new Reservation(address, nonce, generation);
+    }
+
+    /**
+     * Give back a nonce whose transaction never reached the node, so that it is handed out again
+     * before any new nonce. Reservations from before the last {@link #resync(String)} are ignored.
+     *
+     * @param reservation reservation to give back
+     */
+    public void release(Reservation reservation) {
+        Generation generation = currentFor(reservation.address).get();
+        if (generation == reservation.generation && reservation.nonce >= generation.floor.get()) {
+            generation.released.add(reservation.nonce);
+        }
+    }
+
+    /**
+     * Adjust the nonces of an account after the node rejected a transaction. If the error shows
+     * that the nonce was already used, the counter is moved forward to the pending count of the
+     * account; if it shows a nonce too far ahead, the nonce is released and the account is {@link
+     * #reconcile reconciled}, which fills the gap in front of it; for any other error the
+     * transaction was not accepted and the nonce is released.
+     *
+     * @param reservation reservation of the rejected transaction
+     * @param error error returned by the node
+     * @throws IOException if the pending count could not be fetched
+     */
+    public void handleError(Reservation reservation, Response.Error error) throws IOException {
+        handleErrors(Collections.singletonMap(reservation, error));
+    }
+
+    /**
+     * Adjust the nonces after the node rejected several transactions, as {@link
+     * #handleError(Reservation, Response.Error)} does for one, fetching the pending count of each
+     * account at most once.
+     *
+     * @param errors errors returned by the node, by reservation of the rejected transaction
+     * @throws IOException if a pending count could not be fetched
+     */
+    public void handleErrors(Map<Reservation, Response.Error> errors) throws IOException {
+        Set<String> addressesToReconcile = new LinkedHashSet<>();
+        for (Map.Entry<Reservation, Response.Error> entry : errors.entrySet()) {
+            Reservation reservation = entry.getKey();
+            String message = entry.getValue().getMessage();
+            message = message == null ? "" : message.toLowerCase(Locale.ROOT);
+            String address = reservation.address;
+            if (isNonceUsed(message)) {
+                log.debug(
+                        "Nonce {} of {} was already used: {}", reservation.nonce, address, message);
+                addressesToReconcile.add(address.toLowerCase(Locale.ROOT));
+            } else if (message.contains("nonce too high")) {
+                log.warn("Nonce {} of {} is ahead of the node", reservation.nonce, address);
+                release(reservation);
+                addressesToReconcile.add(address.toLowerCase(Locale.ROOT));
+            } else {
+                release(reservation);
+            }
+        }
+
+        for (String address : addressesToReconcile) {
+            reconcile(address);
+        }
+    }
+
+    /**
+     * Record that a transaction was sent but its outcome is unknown, because the request failed
+     * without a reply. The nonce is neither handed out again nor given up: after the {@link
+     * #setReconcileDelay reconcile delay} the account is {@link #reconcile reconciled}, which
+     * releases the nonce only if the node does not know the transaction.
+     *
+     * @param reservation reservation of the transaction
+     * @param transactionHash hash of the signed transaction
+     */
+    public void markUnknown(Reservation reservation, String transactionHash) {
+        Generation generation = currentFor(reservation.address).get();
+        if (generation != reservation.generation || reservation.nonce < generation.floor.get()) {
+            return;
+        }
+        generation.unknown.put(reservation.nonce, transactionHash);
+        if (!generation.reconcileScheduled.compareAndSet(false, true)) {
+            // A whole batch without a reply is reconciled at once
+            return;
+        }
+
+        String address = reservation.address;
+        Async.sharedScheduledExecutorService()
+                .schedule(
+                        () -> {
+                            generation.reconcileScheduled.set(false);
+                            try {
+                                reconcile(address);
+                            } catch (IOException | RuntimeException e) {
+                                log.warn("Failed to reconcile nonces of {}", address, e);
+                            }
+                        },
+                        reconcileDelay,
+                        TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Bring the nonces of an account in line with the node without moving the counter backwards.
+     * The counter is moved forward to the pending count. Each nonce {@link #markUnknown marked
+     * unknown} is then resolved: it stays used if it is below the pending count or the node knows
+     * its transaction, and is released otherwise.
+     *
+     * @param address account address
+     * @throws IOException if the pending count or a transaction could not be fetched
+     */
+    public void reconcile(String address) throws IOException {
+        Generation generation = currentFor(address).get();
+        if (generation == null) {
+            return;
+        }
+
+        long pendingNonce = fetchPendingNonce(address);
+        advance(generation, pendingNonce);
+        for (Map.Entry<Long, String> entry : generation.unknown.entrySet()) {
+            long nonce = entry.getKey();
+            if (nonce < pendingNonce || isKnown(entry.getValue())) {
+                generation.unknown.remove(nonce, entry.getValue());
+            } else if (generation.unknown.remove(nonce, entry.getValue())) {
+                log.info(
+                        "Transaction {} with nonce {} of {} did not reach the node",
+                        entry.getValue(),
+                        nonce,
+                        address);
+                if (nonce >= generation.floor.get()) {
+                    generation.released.add(nonce);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the nonces of an account over from its transaction count in the pending pool. Any
+     * transaction of the account that is still in flight may end up sharing a nonce with a new
+     * one, so this must only be called while the account is idle; it is never called
+     * automatically.
+     *
+     * @param address account address
+     * @throws IOException if the pending count could not be fetched
+     */
+    public void resync(String address) throws IOException {
+        currentFor(address).set(new Generation(fetchPendingNonce(address)));
+    }
+
+    /**
+     * Set the next nonce handed out for an account, discarding any released nonces.
+     *
+     * @param address account address
+     * @param nextNonce next nonce to hand out
+     */
+    public void setNextNonce(String address, BigInteger nextNonce) {
+        currentFor(address).set(new Generation(nextNonce.longValueExact()));
+    }
+
+    /**
+     * The nonce the counter of an account hands out next, not counting released nonces.
+     *
+     * @param address account address
+     * @return the next nonce, or null if no nonce was reserved for the account yet
+     */
+    public BigInteger getNextNonce(String address) {
+        Generation generation = currentFor(address).get();
+        return generation == null ? null : BigInteger.valueOf(generation.next.get());
+    }
+
+    /**
+     * The released nonces of an account that were not handed out again yet. Each is a gap that
+     * holds back every later transaction of the account in the node's queue until it is filled.
+     *
+     * @param address account address
+     * @return released nonces in ascending order
+     */
+    public List<BigInteger> getGaps(String address) {
+        Generation generation = currentFor(address).get();
+        List<BigInteger> gaps = new ArrayList<>();
+        if (generation != null) {
+            for (Long nonce : generation.released) {
+                gaps.add(BigInteger.valueOf(nonce));
+            }
+        }
+        return gaps;
+    }
+
+    public boolean hasGaps(String address) {
+        Generation generation = currentFor(address).get();
+        return generation != null && !generation.released.isEmpty();
+    }
+
+    /**
+     * The nonces of an account {@link #markUnknown marked unknown} that were not reconciled yet.
+     *
+     * @param address account address
+     * @return unknown nonces in ascending order
+     */
+    public List<BigInteger> getUnknownNonces(String address) {
+        Generation generation = currentFor(address).get();
+        List<BigInteger> nonces = new ArrayList<>();
+        if (generation != null) {
+            for (Long nonce : generation.unknown.keySet()) {
+                nonces.add(BigInteger.valueOf(nonce));
+            }
+        }
+        return nonces;
+    }
+
+    private static boolean isNonceUsed(String message) {
+        return message.contains("nonce too low")
+                || message.contains("already known")
+                || message.contains("known transaction")
+                || message.contains("replacement transaction underpriced");
+    }
+
+    // Nonces below the pending count are taken, hand out none of them again
+    private static void advance(Generation generation, long pendingNonce) {
+        long next;
+        do {
+            next = generation.next.get();
+        } while (next < pendingNonce && !generation.next.compareAndSet(next, pendingNonce));
+
+        long floor;
+        do {
+            floor = generation.floor.get();
+        } while (floor < pendingNonce && !generation.floor.compareAndSet(floor, pendingNonce));
+        generation.released.headSet(pendingNonce).clear();
+    }
+
+    private boolean isKnown(String transactionHash) throws IOException {
+        AbeyTransaction transaction = abeyj.abeyGetTransactionByHash(transactionHash).send();
+        if (transaction.hasError()) {
+            throw new IOException(
+                    "Failed to fetch transaction "
+                            + transactionHash
+                            + ": "
+                            + transaction.getError().getMessage());
+        }
+        return transaction.getTransaction().isPresent();
+    }
+
+    private AtomicReference<Generation> currentFor(String address) {
+        return generationForAddress.computeIfAbsent(
+                address.toLowerCase(Locale.ROOT), key -> new AtomicReference<>());
+    }
+
+    private long fetchPendingNonce(String address) throws IOException {
+        AbeyGetTransactionCount transactionCount =
+                abeyj.abeyGetTransactionCount(address, DefaultBlockParameterName.PENDING).send();
+        if (transactionCount.hasError()) {
+            throw new IOException(
+                    "Failed to fetch transaction count of "
+                            + address
+                            + ": "
+                            + transactionCount.getError().getMessage());
+        }
+        return transactionCount.getTransactionCount().longValueExact();
+    }
+
+    /**
+     * Nonces of an account since it was last synchronised with the node. Replaced as a whole on
+     * resynchronisation, so that reservations made before it cannot be released into it.
+     */
+    private static final class Generation {
+        final AtomicLong next;
+        // Nonces below the floor are known to be used
+        final AtomicLong floor;
+        final NavigableSet<Long> released = new ConcurrentSkipListSet<>();
+        // Nonces of transactions sent without a reply, with their hashes
+        final Map<Long, String> unknown = new ConcurrentSkipListMap<>();
+        final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+
+        Generation(long next) {
+            this.next = new AtomicLong(next);
+            this.floor = new AtomicLong(next);
+        }
+    }
+
+    /** A nonce handed out for one transaction. */
+    public static final class Reservation {
+        private final String address;
+        private final long nonce;
+        private final Generation generation;
+
+        private Reservation(String address, long nonce, Generation generation) {
+            this.address = address;
+            this.nonce = nonce;
+            this.generation = generation;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public BigInteger getNonce() {
+            return BigInteger.valueOf(nonce);
+        }
+    }
+}
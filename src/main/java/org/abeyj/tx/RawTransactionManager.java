@@ -179,7 +179,17 @@ public class RawTransactionManager extends TransactionManager {
     }
 
     public AbeySendTransaction signAndSend(RawTransaction rawTransaction) throws IOException {
-        String hexValue = sign(rawTransaction);
+        return send(sign(rawTransaction));
+    }
+
+    /**
+     * Send a transaction signed by {@link #sign(RawTransaction)}.
+     *
+     * @param hexValue signed transaction in hex
+     * @return the node's response
+     * @throws IOException if the request failed
+     */
+    protected AbeySendTransaction send(String hexValue) throws IOException {
         AbeySendTransaction abeySendTransaction = abeyj.abeySendRawTransaction(hexValue).send();
 
         if (abeySendTransaction != null && !abeySendTransaction.hasError()) {
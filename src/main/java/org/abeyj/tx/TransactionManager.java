@@ -22,9 +22,11 @@ import org.abeyj.protocol.exceptions.TransactionException;
 import org.abeyj.tx.exceptions.ContractCallException;
 import org.abeyj.tx.response.PollingTransactionReceiptProcessor;
 import org.abeyj.tx.response.TransactionReceiptProcessor;
+import org.abeyj.utils.Async;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
 
 import static org.abeyj.protocol.core.JsonRpc2_0Abeyj.DEFAULT_BLOCK_TIME;
 
@@ -81,6 +83,30 @@ public abstract class TransactionManager {
         return processResponse(abeySendTransaction);
     }
 
+    /**
+     * Send a transaction and wait for its receipt without holding a thread while waiting. The
+     * transaction itself is signed and sent on {@link Async#getExecutor()}.
+     *
+     * @param gasPrice gas price
+     * @param gasLimit gas limit
+     * @param to recipient, or null when deploying a contract
+     * @param data transaction data
+     * @param value value to transfer
+     * @param constructor whether the transaction deploys a contract
+     * @return future completed with the receipt
+     */
+    protected CompletableFuture<TransactionReceipt> executeTransactionAsync(
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            String to,
+            String data,
+            BigInteger value,
+            boolean constructor) {
+
+        return Async.run(() -> sendTransaction(gasPrice, gasLimit, to, data, value, constructor))
+                .thenCompose(this::processResponseAsync);
+    }
+
     protected TransactionReceipt executeTransactionEIP1559(
             BigInteger gasPremium,
             BigInteger feeCap,
@@ -167,6 +193,21 @@ public abstract class TransactionManager {
         return transactionReceiptProcessor.waitForTransactionReceipt(transactionHash);
     }
 
+    private CompletableFuture<TransactionReceipt> processResponseAsync(
+            AbeySendTransaction transactionResponse) {
+        if (transactionResponse.hasError()) {
+            CompletableFuture<TransactionReceipt> result = new CompletableFuture<>();
+            result.completeExceptionally(
+                    new RuntimeException(
+                            "Error processing transaction request: "
+                                    + transactionResponse.getError().getMessage()));
+            return result;
+        }
+
+        return transactionReceiptProcessor.waitForTransactionReceiptAsync(
+                transactionResponse.getTransactionHash());
+    }
+
     static void assertCallNotReverted(AbeyCall abeyCall) {
         if (abeyCall.isReverted()) {
             throw new ContractCallException(
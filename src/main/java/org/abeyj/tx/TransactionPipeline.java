@@ -0,0 +1,624 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.tx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.common.Constant;
+import org.abeyj.crypto.Credentials;
+import org.abeyj.crypto.Hash;
+import org.abeyj.crypto.RawTransaction;
+import org.abeyj.crypto.TransactionEncoder;
+import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.AbeyjService;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
+import org.abeyj.protocol.core.methods.response.AbeySendTransaction;
+import org.abeyj.protocol.core.methods.response.TransactionReceipt;
+import org.abeyj.protocol.exceptions.TransactionException;
+import org.abeyj.response.transaction.AbeyRawTransaction;
+import org.abeyj.response.transaction.AbeyTransactionEncoder;
+import org.abeyj.tx.exceptions.TxHashMismatchException;
+import org.abeyj.tx.response.AsyncTransactionReceiptProcessor;
+import org.abeyj.tx.response.TransactionReceiptProcessor;
+import org.abeyj.utils.Async;
+import org.abeyj.utils.BoundedExecutorService;
+import org.abeyj.utils.Numeric;
+import org.abeyj.utils.TxHashVerifier;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sends signed transactions at a high rate by splitting submission into stages that run
+ * concurrently.
+ *
+ * <ol>
+ *   <li>{@link Stage#NONCE}: the nonce is reserved from a {@link NonceManager} on the submitting
+ *       thread, without a round trip to the node after the first transaction of an account.
+ *   <li>{@link Stage#SIGNING}: transactions are signed on a pool with one thread per core.
+ *   <li>{@link Stage#SUBMISSION}: signed transactions are sent in JSON-RPC batches of up to {@code
+ *       batchSize} transactions, with a limited number of batches in flight.
+ *   <li>{@link Stage#RECEIPT}: receipts are awaited asynchronously through {@link
+ *       TransactionReceiptProcessor#waitForTransactionReceiptAsync(String)}.
+ * </ol>
+ *
+ * <p>The queues in front of the signing and submission stages are bounded, so a submitter that
+ * outpaces the node is blocked in {@link #submit} rather than filling the heap. The count and
+ * latency of every stage are recorded in {@link StageMetrics}.
+ *
+ * <p>If a batch was sent but no reply arrived for a transaction, the node may or may not have
+ * received it. Its submission then fails with a {@link TransactionException} carrying the locally
+ * computed transaction hash, so that callers can look it up, and its nonce is {@link
+ * NonceManager#markUnknown marked unknown} rather than handed out again. Nonce adjustments that
+ * need a round trip to the node run on {@link Async}, never on the thread delivering the reply.
+ *
+ * <p>Transactions of one account are signed in parallel and may reach the node slightly out of
+ * nonce order; the node holds a transaction back until the nonces before it arrive.
+ */
+public class TransactionPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionPipeline.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 4;
+
+    private static final String SEND_RAW_TRANSACTION = "abey_sendRawTransaction";
+
+    /** Stages a transaction passes through. */
+    public enum Stage {
+        NONCE,
+        SIGNING,
+        SUBMISSION,
+        RECEIPT
+    }
+
+    private final AbeyjService abeyjService;
+    private final long chainId;
+    private final NonceManager nonceManager;
+    private final TransactionReceiptProcessor transactionReceiptProcessor;
+    private final int batchSize;
+
+    private final BoundedExecutorService signingExecutor;
+    private final BlockingQueue<SignedTransaction> signedTransactions;
+    private final Semaphore batchesInFlight;
+    private final Thread submitter;
+    private final Map<Stage, StageMetrics> metrics = new EnumMap<>(Stage.class);
+
+    private volatile TxHashVerifier txHashVerifier = new TxHashVerifier();
+    private volatile boolean running = true;
+
+    public TransactionPipeline(AbeyjService abeyjService, long chainId) {
+        this(
+                abeyjService,
+                chainId,
+                Abeyj.build(abeyjService),
+                Runtime.getRuntime().availableProcessors(),
+                DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_BATCH_SIZE,
+                DEFAULT_MAX_BATCHES_IN_FLIGHT);
+    }
+
+    private TransactionPipeline(
+            AbeyjService abeyjService,
+            long chainId,
+            Abeyj abeyj,
+            int signingThreads,
+            int queueCapacity,
+            int batchSize,
+            int maxBatchesInFlight) {
+        this(
+                abeyjService,
+                chainId,
+                new NonceManager(abeyj),
+                new AsyncTransactionReceiptProcessor(abeyj),
+                signingThreads,
+                queueCapacity,
+                batchSize,
+                maxBatchesInFlight);
+    }
+
+    /**
+     * Creates a TransactionPipeline.
+     *
+     * @param abeyjService service to send transactions through
+     * @param chainId chain id, or {@link ChainId#NONE} to sign plain transactions without one
+     * @param nonceManager source of nonces, may be shared with transaction managers
+     * @param transactionReceiptProcessor processor waiting for receipts
+     * @param signingThreads number of threads signing transactions
+     * @param queueCapacity capacity of the queues in front of the signing and submission stages
+     * @param batchSize maximum number of transactions sent in one JSON-RPC batch
+     * @param maxBatchesInFlight maximum number of batches awaiting a reply
+     */
+    public TransactionPipeline(
+            AbeyjService abeyjService,
+            long chainId,
+            NonceManager nonceManager,
+            TransactionReceiptProcessor transactionReceiptProcessor,
+            int signingThreads,
+            int queueCapacity,
+            int batchSize,
+            int maxBatchesInFlight) {
+        if (signingThreads < 1 || queueCapacity < 1 || batchSize < 1 || maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException(
+                    "Thread count, queue capacity, batch size and batches in flight must be "
+                            + "positive");
+        }
+        this.abeyjService = abeyjService;
+        this.chainId = chainId;
+        this.nonceManager = nonceManager;
+        this.transactionReceiptProcessor = transactionReceiptProcessor;
+        this.batchSize = batchSize;
+
+        for (Stage stage : Stage.values()) {
+            metrics.put(stage, new StageMetrics());
+        }
+
+        this.signingExecutor =
+                new BoundedExecutorService(
+                        signingThreads,
+                        queueCapacity,
+                        BoundedExecutorService.OverflowPolicy.BLOCK,
+                        "abeyj-signer");
+        this.signedTransactions = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+
+        this.submitter = new Thread(this::submitBatches, "abeyj-submitter");
+        this.submitter.setDaemon(true);
+        this.submitter.start();
+    }
+
+    /**
+     * Submit a plain transaction, sent with {@code abey_sendRawTransaction}. Blocks while the
+     * signing queue is full.
+     *
+     * @param credentials credentials of the sending account
+     * @param gasPrice gas price
+     * @param gasLimit gas limit
+     * @param to recipient
+     * @param value value in wei
+     * @param data call data, may be empty
+     * @return the submission
+     * @throws IOException if the first nonce of the account could not be fetched
+     */
+    public Submission submit(
+            Credentials credentials,
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            String to,
+            BigInteger value,
+            String data)
+            throws IOException {
+        return submit(
+                credentials.getAddress(),
+                SEND_RAW_TRANSACTION,
+                true,
+                nonce -> {
+                    RawTransaction rawTransaction =
+                            RawTransaction.createTransaction(
+                                    nonce, gasPrice, gasLimit, to, value, data);
+                    byte[] signedMessage =
+                            chainId > ChainId.NONE
+                                    ? TransactionEncoder.signMessage(
+                                            rawTransaction, chainId, credentials)
+                                    : TransactionEncoder.signMessage(rawTransaction, credentials);
+                    return Numeric.toHexString(signedMessage);
+                });
+    }
+
+    /**
+     * Submit an Abey transaction, sent with {@code abey_sendAbeyRawTransaction}. Blocks while the
+     * signing queue is full.
+     *
+     * @param from credentials of the sending account
+     * @param payment credentials of the account paying the gas, or null if the sender pays
+     * @param gasPrice gas price
+     * @param gasLimit gas limit
+     * @param to recipient
+     * @param value value in wei
+     * @param data call data, may be empty
+     * @param fee fee in wei, may be null
+     * @return the submission
+     * @throws IOException if the first nonce of the account could not be fetched
+     */
+    public Submission submitAbey(
+            Credentials from,
+            Credentials payment,
+            BigInteger gasPrice,
+            BigInteger gasLimit,
+            String to,
+            BigInteger value,
+            String data,
+            BigInteger fee)
+            throws IOException {
+        return submit(
+                from.getAddress(),
+                Constant.SEND_ABEY_RAW_TRANSACTION,
+                false,
+                nonce -> {
+                    byte[] signedMessage;
+                    if (payment == null) {
+                        AbeyRawTransaction abeyRawTransaction =
+                                AbeyRawTransaction.createAbeyFeeTransaction(
+                                        nonce, gasPrice, gasLimit, to, value, data, fee);
+                        signedMessage =
+                                AbeyTransactionEncoder.signMessageFrom(
+                                        abeyRawTransaction, chainId, from);
+                    } else {
+                        AbeyRawTransaction abeyRawTransaction =
+                                AbeyRawTransaction.createAbeyPaymentAndFeeTransaction(
+                                        nonce,
+                                        gasPrice,
+                                        gasLimit,
+                                        to,
+                                        value,
+                                        data,
+                                        fee,
+                                        payment.getAddress());
+                        signedMessage =
+                                AbeyTransactionEncoder.signMessage_fromAndPayment(
+                                        abeyRawTransaction, chainId, from, payment);
+                    }
+                    return Numeric.toHexString(signedMessage);
+                });
+    }
+
+    private Submission submit(
+            String address, String method, boolean verifyHash, Function<BigInteger, String> signer)
+            throws IOException {
+        if (!running) {
+            throw new RejectedExecutionException("Transaction pipeline is shut down");
+        }
+
+        long start = System.nanoTime();
+        NonceManager.Reservation reservation = nonceManager.reserve(address);
+        metrics.get(Stage.NONCE).record(start);
+
+        Submission submission = new Submission();
+        long queued = System.nanoTime();
+        try {
+            signingExecutor.execute(
+                    () -> sign(reservation, method, verifyHash, signer, submission, queued));
+        } catch (RejectedExecutionException e) {
+            nonceManager.release(reservation);
+            throw e;
+        }
+        return submission;
+    }
+
+    private void sign(
+            NonceManager.Reservation reservation,
+            String method,
+            boolean verifyHash,
+            Function<BigInteger, String> signer,
+            Submission submission,
+            long queued) {
+        SignedTransaction signedTransaction;
+        try {
+            String signedMessage = signer.apply(reservation.getNonce());
+            signedTransaction =
+                    new SignedTransaction(
+                            reservation, method, signedMessage, verifyHash, submission);
+        } catch (RuntimeException e) {
+            nonceManager.release(reservation);
+            submission.fail(e);
+            return;
+        }
+        metrics.get(Stage.SIGNING).record(queued);
+
+        try {
+            signedTransaction.enqueuedAt = System.nanoTime();
+            signedTransactions.put(signedTransaction);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            nonceManager.release(reservation);
+            submission.fail(e);
+        }
+    }
+
+    private void submitBatches() {
+        // Signing tasks still queued or running at shutdown put their transactions afterwards, so
+        // the queue is only drained for the last time once the signing executor has terminated
+        while (running || !signingExecutor.isTerminated() || !signedTransactions.isEmpty()) {
+            List<SignedTransaction> batch = new ArrayList<>(batchSize);
+            try {
+                SignedTransaction first = signedTransactions.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                signedTransactions.drainTo(batch, batchSize - 1);
+                batchesInFlight.acquire();
+            } catch (InterruptedException e) {
+                for (SignedTransaction signedTransaction : batch) {
+                    fail(signedTransaction, e);
+                }
+                break;
+            }
+            sendBatch(batch);
+        }
+    }
+
+    private void sendBatch(List<SignedTransaction> batch) {
+        BatchRequest batchRequest = new BatchRequest(abeyjService);
+        Map<Long, SignedTransaction> transactionForId = new HashMap<>();
+        for (SignedTransaction signedTransaction : batch) {
+            Request<String, AbeySendTransaction> request =
+                    new Request<>(
+                            signedTransaction.method,
+                            Collections.singletonList(signedTransaction.signedMessage),
+                            abeyjService,
+                            AbeySendTransaction.class);
+            batchRequest.add(request);
+            transactionForId.put(request.getId(), signedTransaction);
+        }
+
+        CompletableFuture<BatchResponse> reply;
+        try {
+            reply = batchRequest.sendAsync();
+        } catch (RuntimeException e) {
+            batchesInFlight.release();
+            for (SignedTransaction signedTransaction : batch) {
+                fail(signedTransaction, e);
+            }
+            return;
+        }
+
+        reply.whenComplete(
+                (batchResponse, throwable) -> {
+                    batchesInFlight.release();
+                    if (throwable != null || batchResponse == null) {
+                        Throwable cause =
+                                throwable != null
+                                        ? throwable
+                                        : new IOException("No reply to transaction batch");
+                        failUnknown(batch, cause);
+                        return;
+                    }
+
+                    Map<NonceManager.Reservation, Response.Error> errors = new HashMap<>();
+                    for (Response<?> response : batchResponse.getResponses()) {
+                        SignedTransaction signedTransaction =
+                                transactionForId.remove(response.getId());
+                        if (signedTransaction != null) {
+                            metrics.get(Stage.SUBMISSION).record(signedTransaction.enqueuedAt);
+                            processReply(
+                                    signedTransaction, (AbeySendTransaction) response, errors);
+                        }
+                    }
+                    if (!transactionForId.isEmpty()) {
+                        failUnknown(
+                                transactionForId.values(),
+                                new IOException("No reply to transaction"));
+                    }
+                    if (!errors.isEmpty()) {
+                        handleErrors(errors);
+                    }
+                });
+    }
+
+    // Fetches pending counts, so it must not block the thread that delivered the reply
+    private void handleErrors(Map<NonceManager.Reservation, Response.Error> errors) {
+        Async.run(
+                        () -> {
+                            nonceManager.handleErrors(errors);
+                            return null;
+                        })
+                .whenComplete(
+                        (result, throwable) -> {
+                            if (throwable != null) {
+                                log.warn(
+                                        "Failed to adjust nonces after rejected transactions",
+                                        throwable);
+                            }
+                        });
+    }
+
+    private void processReply(
+            SignedTransaction signedTransaction,
+            AbeySendTransaction abeySendTransaction,
+            Map<NonceManager.Reservation, Response.Error> errors) {
+        Submission submission = signedTransaction.submission;
+        if (abeySendTransaction.hasError()) {
+            errors.put(signedTransaction.reservation, abeySendTransaction.getError());
+            String message = abeySendTransaction.getError().getMessage();
+            submission.fail(new IOException("Transaction rejected: " + message));
+            return;
+        }
+
+        String transactionHash = abeySendTransaction.getTransactionHash();
+        if (signedTransaction.verifyHash) {
+            String localHash = Hash.sha3(signedTransaction.signedMessage);
+            if (!txHashVerifier.verify(localHash, transactionHash)) {
+                submission.fail(new TxHashMismatchException(localHash, transactionHash));
+                return;
+            }
+        }
+        submission.transactionHash.complete(transactionHash);
+
+        long submitted = System.nanoTime();
+        transactionReceiptProcessor
+                .waitForTransactionReceiptAsync(transactionHash)
+                .whenComplete(
+                        (receipt, throwable) -> {
+                            if (throwable != null) {
+                                submission.receipt.completeExceptionally(throwable);
+                            } else {
+                                metrics.get(Stage.RECEIPT).record(submitted);
+                                submission.receipt.complete(receipt);
+                            }
+                        });
+    }
+
+    // For transactions that never left the pipeline, so their nonces can be used again
+    private void fail(SignedTransaction signedTransaction, Throwable cause) {
+        nonceManager.release(signedTransaction.reservation);
+        signedTransaction.submission.fail(cause);
+    }
+
+    // For transactions that were sent without a reply. Reusing their nonces could replace a
+    // transaction the node did receive, so they are left to the nonce manager to reconcile.
+    private void failUnknown(Iterable<SignedTransaction> signedTransactions, Throwable cause) {
+        for (SignedTransaction signedTransaction : signedTransactions) {
+            String transactionHash = Hash.sha3(signedTransaction.signedMessage);
+            nonceManager.markUnknown(signedTransaction.reservation, transactionHash);
+            TransactionException exception =
+                    new TransactionException(
+                            "Outcome of transaction " + transactionHash + " is unknown",
+                            transactionHash);
+            exception.initCause(cause);
+            signedTransaction.submission.fail(exception);
+        }
+    }
+
+    public StageMetrics getMetrics(Stage stage) {
+        return metrics.get(stage);
+    }
+
+    /** Number of transactions waiting to be signed. */
+    public int getSigningQueueDepth() {
+        return signingExecutor.getQueueDepth();
+    }
+
+    /** Number of signed transactions waiting to be sent. */
+    public int getSubmissionQueueDepth() {
+        return signedTransactions.size();
+    }
+
+    public NonceManager getNonceManager() {
+        return nonceManager;
+    }
+
+    public void setTxHashVerifier(TxHashVerifier txHashVerifier) {
+        this.txHashVerifier = txHashVerifier;
+    }
+
+    /**
+     * Stop accepting transactions. Transactions already submitted are still signed and sent, and
+     * their receipts are still awaited; the submitting thread exits once the last of them was sent.
+     */
+    public void shutdown() {
+        running = false;
+        signingExecutor.shutdown();
+    }
+
+    /** Outcome of one submitted transaction. */
+    public static final class Submission {
+        private final CompletableFuture<String> transactionHash = new CompletableFuture<>();
+        private final CompletableFuture<TransactionReceipt> receipt = new CompletableFuture<>();
+
+        private Submission() {}
+
+        /** Completes with the transaction hash once the node accepted the transaction. */
+        public CompletableFuture<String> getTransactionHash() {
+            return transactionHash;
+        }
+
+        /** Completes with the receipt once the transaction was mined. */
+        public CompletableFuture<TransactionReceipt> getReceipt() {
+            return receipt;
+        }
+
+        private void fail(Throwable cause) {
+            transactionHash.completeExceptionally(cause);
+            receipt.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Count and latency of the transactions that passed a stage. Latency runs from entering the
+     * stage, including any time spent queueing for it, to leaving it.
+     */
+    public static final class StageMetrics {
+        private final long startedAt = System.nanoTime();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalLatency = new LongAdder();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private StageMetrics() {}
+
+        void record(long enteredAt) {
+            long latency = System.nanoTime() - enteredAt;
+            count.increment();
+            totalLatency.add(latency);
+            long max;
+            do {
+                max = maxLatency.get();
+            } while (latency > max && !maxLatency.compareAndSet(max, latency));
+        }
+
+        /** Number of transactions that passed the stage. */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** Transactions per second that passed the stage since the pipeline was created. */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - startedAt;
+            return elapsed <= 0 ? 0 : count.sum() * 1e9 / elapsed;
+        }
+
+        public long getAverageLatency(TimeUnit unit) {
+            long transactions = count.sum();
+            if (transactions == 0) {
+                return 0;
+            }
+            return unit.convert(totalLatency.sum() / transactions, TimeUnit.NANOSECONDS);
+        }
+
+        public long getMaxLatency(TimeUnit unit) {
+            return unit.convert(maxLatency.get(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final class SignedTransaction {
+        final NonceManager.Reservation reservation;
+        final String method;
+        final String signedMessage;
+        final boolean verifyHash;
+        final Submission submission;
+        // When the transaction entered the submission queue
+        volatile long enqueuedAt;
+
+        SignedTransaction(
+                NonceManager.Reservation reservation,
+                String method,
+                String signedMessage,
+                boolean verifyHash,
+                Submission submission) {
+            this.reservation = reservation;
+            this.method = method;
+            this.signedMessage = signedMessage;
+            this.verifyHash = verifyHash;
+            this.submission = submission;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.tx.response;
+
+import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.core.methods.response.TransactionReceipt;
+import org.abeyj.protocol.exceptions.TransactionException;
+import org.abeyj.tx.TransactionManager;
+import org.abeyj.utils.Async;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction receipt processor that waits for receipts without holding a thread.
+ *
+ * <p>Lookups are scheduled on {@link Async#sharedScheduledExecutorService()} and sent
+ * asynchronously. The delay between lookups starts at {@code initialDelay} and doubles up to
+ * {@code maxDelay}, with some jitter so that transactions sent together do not poll in lockstep.
+ * Concurrent waits for the same transaction share a single series of lookups.
+ */
+public class AsyncTransactionReceiptProcessor extends TransactionReceiptProcessor {
+
+    public static final long DEFAULT_INITIAL_DELAY = 500;
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final long timeout;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, CompletableFuture<TransactionReceipt>> pendingForHash =
+            new ConcurrentHashMap<>();
+
+    public AsyncTransactionReceiptProcessor(Abeyj abeyj) {
+        this(
+                abeyj,
+                DEFAULT_INITIAL_DELAY,
+                TransactionManager.DEFAULT_POLLING_FREQUENCY,
+                TransactionManager.DEFAULT_POLLING_FREQUENCY
+                        * TransactionManager.DEFAULT_POLLING_ATTEMPTS_PER_TX_HASH);
+    }
+
+    /**
+     * Creates an AsyncTransactionReceiptProcessor.
+     *
+     * @param abeyj Abeyj instance to query
+     * @param initialDelay delay before the second lookup, in milliseconds
+     * @param maxDelay maximum delay between lookups, in milliseconds
+     * @param timeout time after which a transaction without a receipt fails, in milliseconds
+     */
+    public AsyncTransactionReceiptProcessor(
+            Abeyj abeyj, long initialDelay, long maxDelay, long timeout) {
+        super(abeyj);
+        if (initialDelay < 1 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException(
+                    "Initial delay must be positive and must not exceed the maximum delay");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.timeout = timeout;
+        this.scheduler = Async.sharedScheduledExecutorService();
+    }
+
+    @Override
+    public TransactionReceipt waitForTransactionReceipt(String transactionHash)
+            throws IOException, TransactionException {
+        try {
+            return waitForTransactionReceiptAsync(transactionHash).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof TransactionException) {
+                throw (TransactionException) cause;
+            }
+            throw new TransactionException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransactionReceipt> waitForTransactionReceiptAsync(
+            String transactionHash) {
+        CompletableFuture<TransactionReceipt> created = new CompletableFuture<>();
+        CompletableFuture<TransactionReceipt> existing =
+                pendingForHash.putIfAbsent(transactionHash, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        created.whenComplete((receipt, throwable) -> pendingForHash.remove(transactionHash));
+        lookUp(transactionHash, created, initialDelay, System.currentTimeMillis() + timeout);
+        return created;
+    }
+
+    /** Number of transactions whose receipt is being waited for. */
+    public int getPendingCount() {
+        return pendingForHash.size();
+    }
+
+    private void lookUp(
+            String transactionHash,
+            CompletableFuture<TransactionReceipt> result,
+            long delay,
+            long deadline) {
+        sendTransactionReceiptRequestAsync(transactionHash)
+                .whenComplete(
+                        (receipt, throwable) -> {
+                            if (throwable != null) {
+                                result.completeExceptionally(unwrap(throwable));
+                            } else if (receipt.isPresent()) {
+                                result.complete(receipt.get());
+                            } else {
+                                scheduleLookUp(transactionHash, result, delay, deadline);
+                            }
+                        });
+    }
+
+    private void scheduleLookUp(
+            String transactionHash,
+            CompletableFuture<TransactionReceipt> result,
+            long delay,
+            long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            result.completeExceptionally(
+                    new TransactionException(
+                            "Transaction receipt was not generated after "
+                                    + (timeout / 1000)
+                                    + " seconds for transaction: "
+                                    + transactionHash,
+                            transactionHash));
+            return;
+        }
+
+        // Shorten the delay by up to a quarter, at random
+        long jittered = delay - ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        long nextDelay = Math.min(delay * 2, maxDelay);
+        try {
+            scheduler.schedule(
+                    () -> lookUp(transactionHash, result, nextDelay, deadline),
+                    Math.min(jittered, remaining),
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+}
@@ -18,6 +18,7 @@ import org.abeyj.protocol.exceptions.TransactionException;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /** With each provided transaction hash, poll until we obtain a transaction receipt. */
 public class PollingTransactionReceiptProcessor extends TransactionReceiptProcessor {
@@ -25,10 +26,18 @@ public class PollingTransactionReceiptProcessor extends TransactionReceiptProces
     protected final long sleepDuration;
     protected final int attempts;
 
+    // Waits asynchronously with the same interval and overall timeout
+    private final AsyncTransactionReceiptProcessor asyncProcessor;
+
     public PollingTransactionReceiptProcessor(Abeyj abeyj, long sleepDuration, int attempts) {
         super(abeyj);
         this.sleepDuration = sleepDuration;
         this.attempts = attempts;
+
+        long interval = Math.max(1, sleepDuration);
+        this.asyncProcessor =
+                new AsyncTransactionReceiptProcessor(
+                        abeyj, interval, interval, interval * attempts);
     }
 
     @Override
@@ -38,6 +47,17 @@ public class PollingTransactionReceiptProcessor extends TransactionReceiptProces
         return getTransactionReceipt(transactionHash, sleepDuration, attempts);
     }
 
+    /**
+     * Wait for a transaction receipt without holding a thread between lookups. Lookups are made
+     * every {@code sleepDuration} milliseconds until {@code sleepDuration * attempts} milliseconds
+     * have passed.
+     */
+    @Override
+    public CompletableFuture<TransactionReceipt> waitForTransactionReceiptAsync(
+            String transactionHash) {
+        return asyncProcessor.waitForTransactionReceiptAsync(transactionHash);
+    }
+
     private TransactionReceipt getTransactionReceipt(
             String transactionHash, long sleepDuration, int attempts)
             throws IOException, TransactionException {
@@ -12,20 +12,37 @@
  */
 package org.abeyj.tx.response;
 
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.core.methods.response.AbeyGetTransactionReceipt;
 import org.abeyj.protocol.core.methods.response.TransactionReceipt;
 import org.abeyj.protocol.exceptions.TransactionException;
 import org.abeyj.utils.Async;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Transaction receipt processor that uses a single thread to query for transaction receipts.
+ * Transaction receipt processor that queues transaction hashes and queries for their receipts in
+ * the background.
+ *
+ * <p>On every poll the receipts of all pending transactions are requested in JSON-RPC batches of
+ * {@code batchSize} hashes, so a poll takes a handful of round trips however many transactions
+ * are pending. Polls run either at a fixed rate or, with {@link #pollingOnNewBlocks}, whenever a
+ * new block arrives, since a receipt can only appear with a new block. Polls of all instances run
+ * on {@link Async#sharedScheduledExecutorService()}.
  *
  * <p><em>Note:</em>When initially invoked, this processor returns a transaction receipt containing
  * only the transaction hash of the submitted transaction. This is encapsulated in an {@link
@@ -33,25 +50,102 @@ import java.util.concurrent.TimeUnit;
  */
 public class QueuingTransactionReceiptProcessor extends TransactionReceiptProcessor {
 
+    private static final Logger log =
+            LoggerFactory.getLogger(QueuingTransactionReceiptProcessor.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
     private final int pollingAttemptsPerTxHash;
+    private final int batchSize;
 
-    private final ScheduledExecutorService scheduledExecutorService;
     private final Callback callback;
     private final BlockingQueue<RequestWrapper> pendingTransactions;
+    private final Disposable polling;
 
     public QueuingTransactionReceiptProcessor(
             Abeyj abeyj, Callback callback, int pollingAttemptsPerTxHash, long pollingFrequency) {
+        this(abeyj, callback, pollingAttemptsPerTxHash, pollingFrequency, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a processor that polls at a fixed rate.
+     *
+     * @param abeyj Abeyj instance to query
+     * @param callback receives receipts and failures
+     * @param pollingAttemptsPerTxHash number of polls after which a transaction without a receipt
+     *     fails
+     * @param pollingFrequency time between polls, in milliseconds
+     * @param batchSize maximum number of receipts requested per JSON-RPC batch
+     */
+    public QueuingTransactionReceiptProcessor(
+            Abeyj abeyj,
+            Callback callback,
+            int pollingAttemptsPerTxHash,
+            long pollingFrequency,
+            int batchSize) {
+        this(
+                abeyj,
+                callback,
+                pollingAttemptsPerTxHash,
+                Flowable.interval(
+                        pollingFrequency,
+                        pollingFrequency,
+                        TimeUnit.MILLISECONDS,
+                        Schedulers.from(Async.sharedScheduledExecutorService())),
+                batchSize);
+    }
+
+    /**
+     * Creates a processor that polls whenever the trigger emits. Triggers that arrive while a poll
+     * is running are merged into a single following poll.
+     *
+     * @param abeyj Abeyj instance to query
+     * @param callback receives receipts and failures
+     * @param pollingAttemptsPerTxHash number of polls after which a transaction without a receipt
+     *     fails
+     * @param pollTrigger Flowable whose items trigger a poll
+     * @param batchSize maximum number of receipts requested per JSON-RPC batch
+     */
+    public QueuingTransactionReceiptProcessor(
+            Abeyj abeyj,
+            Callback callback,
+            int pollingAttemptsPerTxHash,
+            Flowable<?> pollTrigger,
+            int batchSize) {
         super(abeyj);
-        this.scheduledExecutorService = Async.defaultExecutorService();
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
         this.callback = callback;
         this.pendingTransactions = new LinkedBlockingQueue<>();
         this.pollingAttemptsPerTxHash = pollingAttemptsPerTxHash;
+        this.batchSize = batchSize;
+
+        Scheduler scheduler = Schedulers.from(Async.sharedScheduledExecutorService());
+        this.polling =
+                pollTrigger
+                        .onBackpressureLatest()
+                        .observeOn(scheduler, false, 1)
+                        .subscribe(
+                                trigger -> sendTransactionReceiptRequests(),
+                                throwable ->
+                                        log.error("Receipt polling stopped", throwable));
+    }
 
-        scheduledExecutorService.scheduleAtFixedRate(
-                this::sendTransactionReceiptRequests,
-                pollingFrequency,
-                pollingFrequency,
-                TimeUnit.MILLISECONDS);
+    /**
+     * Creates a processor that polls once for every new block.
+     *
+     * @param abeyj Abeyj instance to query, and to receive new blocks from
+     * @param callback receives receipts and failures
+     * @param pollingAttemptsPerTxHash number of new blocks after which a transaction without a
+     *     receipt fails
+     * @param batchSize maximum number of receipts requested per JSON-RPC batch
+     * @return the processor
+     */
+    public static QueuingTransactionReceiptProcessor pollingOnNewBlocks(
+            Abeyj abeyj, Callback callback, int pollingAttemptsPerTxHash, int batchSize) {
+        return new QueuingTransactionReceiptProcessor(
+                abeyj, callback, pollingAttemptsPerTxHash, abeyj.ethBlockHashFlowable(), batchSize);
     }
 
     @Override
@@ -62,32 +156,82 @@ public class QueuingTransactionReceiptProcessor extends TransactionReceiptProces
         return new EmptyTransactionReceipt(transactionHash);
     }
 
+    /** Number of transactions still waiting for their receipt. */
+    public int getPendingCount() {
+        return pendingTransactions.size();
+    }
+
+    /** Stop polling. Transactions that are still pending are not reported. */
+    public void shutdown() {
+        polling.dispose();
+    }
+
     private void sendTransactionReceiptRequests() {
-        for (RequestWrapper requestWrapper : pendingTransactions) {
+        List<RequestWrapper> pending = new ArrayList<>(pendingTransactions);
+        // Removed in one pass at the end, removing them one by one takes quadratic time
+        Set<RequestWrapper> finished = new HashSet<>();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<RequestWrapper> chunk =
+                    pending.subList(from, Math.min(pending.size(), from + batchSize));
+            List<String> transactionHashes = new ArrayList<>(chunk.size());
+            for (RequestWrapper requestWrapper : chunk) {
+                transactionHashes.add(requestWrapper.getTransactionHash());
+            }
+
+            List<AbeyGetTransactionReceipt> replies;
             try {
-                String transactionHash = requestWrapper.getTransactionHash();
-                Optional<? extends TransactionReceipt> transactionReceipt =
-                        sendTransactionReceiptRequest(transactionHash);
-                if (transactionReceipt.isPresent()) {
-                    callback.accept(transactionReceipt.get());
-                    pendingTransactions.remove(requestWrapper);
+                replies = sendTransactionReceiptRequests(transactionHashes);
+            } catch (IOException e) {
+                for (RequestWrapper requestWrapper : chunk) {
+                    finished.add(requestWrapper);
+                    callback.exception(e);
+                }
+                continue;
+            }
+
+            for (int i = 0; i < chunk.size(); i++) {
+                if (processReply(chunk.get(i), replies.get(i))) {
+                    finished.add(chunk.get(i));
+                }
+            }
+        }
+
+        if (!finished.isEmpty()) {
+            pendingTransactions.removeAll(finished);
+        }
+    }
+
+    /** Handle the reply for one transaction, returning whether the transaction is done. */
+    private boolean processReply(RequestWrapper requestWrapper, AbeyGetTransactionReceipt reply) {
+        String transactionHash = requestWrapper.getTransactionHash();
+        try {
+            if (reply != null && reply.hasError()) {
+                throw new TransactionException(
+                        "Error processing request: " + reply.getError().getMessage());
+            }
+
+            Optional<? extends TransactionReceipt> transactionReceipt =
+                    reply == null ? Optional.empty() : reply.getTransactionReceipt();
+            if (transactionReceipt.isPresent()) {
+                callback.accept(transactionReceipt.get());
+                return true;
+            } else {
+                if (requestWrapper.getCount() == pollingAttemptsPerTxHash) {
+                    throw new TransactionException(
+                            "No transaction receipt for txHash: "
+                                    + transactionHash
+                                    + "received after "
+                                    + pollingAttemptsPerTxHash
+                                    + " attempts",
+                            transactionHash);
                 } else {
-                    if (requestWrapper.getCount() == pollingAttemptsPerTxHash) {
-                        throw new TransactionException(
-                                "No transaction receipt for txHash: "
-                                        + transactionHash
-                                        + "received after "
-                                        + pollingAttemptsPerTxHash
-                                        + " attempts",
-                                transactionHash);
-                    } else {
-                        requestWrapper.incrementCount();
-                    }
+                    requestWrapper.incrementCount();
+                    return false;
                 }
-            } catch (IOException | TransactionException e) {
-                pendingTransactions.remove(requestWrapper);
-                callback.exception(e);
             }
+        } catch (TransactionException e) {
+            callback.exception(e);
+            return true;
         }
     }
 
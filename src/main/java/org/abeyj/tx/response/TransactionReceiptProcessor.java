@@ -13,12 +13,23 @@
 package org.abeyj.tx.response;
 
 import org.abeyj.protocol.Abeyj;
+import org.abeyj.protocol.core.BatchRequest;
+import org.abeyj.protocol.core.BatchResponse;
+import org.abeyj.protocol.core.Request;
+import org.abeyj.protocol.core.Response;
 import org.abeyj.protocol.core.methods.response.AbeyGetTransactionReceipt;
 import org.abeyj.protocol.core.methods.response.TransactionReceipt;
 import org.abeyj.protocol.exceptions.TransactionException;
+import org.abeyj.utils.Async;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /** Abstraction for managing how we wait for transaction receipts to be generated on the network. */
 public abstract class TransactionReceiptProcessor {
@@ -32,6 +43,19 @@ public abstract class TransactionReceiptProcessor {
     public abstract TransactionReceipt waitForTransactionReceipt(String transactionHash)
             throws IOException, TransactionException;
 
+    /**
+     * Wait for a transaction receipt without blocking the caller. By default this runs {@link
+     * #waitForTransactionReceipt(String)} on {@link Async#getExecutor()}, so a thread is still
+     * held while waiting; processors that can wait without one override it.
+     *
+     * @param transactionHash hash of the transaction
+     * @return future completed with the receipt
+     */
+    public CompletableFuture<TransactionReceipt> waitForTransactionReceiptAsync(
+            String transactionHash) {
+        return Async.run(() -> waitForTransactionReceipt(transactionHash));
+    }
+
     Optional<? extends TransactionReceipt> sendTransactionReceiptRequest(String transactionHash)
             throws IOException, TransactionException {
         AbeyGetTransactionReceipt transactionReceipt =
@@ -43,4 +67,55 @@ public abstract class TransactionReceiptProcessor {
 
         return transactionReceipt.getTransactionReceipt();
     }
+
+    CompletableFuture<Optional<? extends TransactionReceipt>> sendTransactionReceiptRequestAsync(
+            String transactionHash) {
+        return abeyj.abeyGetTransactionReceipt(transactionHash)
+                .sendAsync()
+                .thenApply(
+                        transactionReceipt -> {
+                            if (transactionReceipt.hasError()) {
+                                throw new CompletionException(
+                                        new TransactionException(
+                                                "Error processing request: "
+                                                        + transactionReceipt
+                                                                .getError()
+                                                                .getMessage()));
+                            }
+                            return transactionReceipt.getTransactionReceipt();
+                        });
+    }
+
+    /**
+     * Request the receipts of several transactions in one JSON-RPC batch.
+     *
+     * @param transactionHashes hashes of the transactions
+     * @return the replies in the order of the hashes, null for a hash the node did not answer
+     * @throws IOException if the batch could not be sent
+     */
+    List<AbeyGetTransactionReceipt> sendTransactionReceiptRequests(List<String> transactionHashes)
+            throws IOException {
+        BatchRequest batch = abeyj.newBatch();
+        for (String transactionHash : transactionHashes) {
+            batch.add(abeyj.abeyGetTransactionReceipt(transactionHash));
+        }
+        BatchResponse batchResponse = batch.send();
+        if (batchResponse == null) {
+            throw new IOException("No reply to batch of transaction receipt requests");
+        }
+
+        // Servers may answer the elements of a batch in any order
+        Map<Long, AbeyGetTransactionReceipt> replyForId = new HashMap<>();
+        for (Response<?> response : batchResponse.getResponses()) {
+            if (response instanceof AbeyGetTransactionReceipt) {
+                replyForId.put(response.getId(), (AbeyGetTransactionReceipt) response);
+            }
+        }
+
+        List<AbeyGetTransactionReceipt> replies = new ArrayList<>(transactionHashes.size());
+        for (Request<?, ?> request : batch.getRequests()) {
+            replies.add(replyForId.get(request.getId()));
+        }
+        return replies;
+    }
 }
@@ -12,15 +12,31 @@
  */
 package org.abeyj.utils;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Async task facilitation. */
 public class Async {
 
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    /** Maximum number of threads used by the default executor. */
+    public static final int DEFAULT_MAX_THREADS = Math.max(64, getCpuCount() * 8);
+
+    /** Maximum number of tasks queued by the default executor before callers are pushed back. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private static final ExecutorService defaultExecutor =
+            new BoundedExecutorService(
+                    DEFAULT_MAX_THREADS,
+                    DEFAULT_QUEUE_CAPACITY,
+                    BoundedExecutorService.OverflowPolicy.CALLER_RUNS);
+
+    private static volatile ExecutorService executor = defaultExecutor;
+
+    private static volatile ScheduledExecutorService sharedScheduledExecutor;
 
     static {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(executor)));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(defaultExecutor)));
     }
 
     public static <T> CompletableFuture<T> run(Callable<T> callable) {
@@ -39,6 +55,49 @@ public class Async {
         return result;
     }
 
+    /**
+     * Replace the executor used by {@link #run(Callable)}, and therefore by the asynchronous
+     * methods of the HTTP and IPC services. The caller is responsible for shutting down the
+     * executor it provides.
+     *
+     * @param executorService executor to run asynchronous tasks on
+     */
+    public static void setExecutor(ExecutorService executorService) {
+        executor = executorService;
+    }
+
+    /**
+     * Get the executor used by {@link #run(Callable)}. By default this is a {@link
+     * BoundedExecutorService}, whose queue depth, active count and rejection count can be
+     * monitored.
+     *
+     * @return current executor
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task. Virtual threads are only
+     * available on JDK 21 or later.
+     *
+     * @return new virtual thread executor
+     * @throws UnsupportedOperationException if the running JDK does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads require JDK 21 or later, running on "
+                            + System.getProperty("java.version"),
+                    e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
     private static int getCpuCount() {
         return Runtime.getRuntime().availableProcessors();
     }
@@ -59,6 +118,37 @@ public class Async {
         return scheduledExecutorService;
     }
 
+    /**
+     * Get the ScheduledExecutorService shared by components that run short periodic tasks, such
+     * as receipt polling, instead of each creating a thread pool of their own. It is created on
+     * first use and runs on daemon threads, so it does not keep the JVM alive. Callers must not
+     * shut it down.
+     *
+     * @return shared ScheduledExecutorService
+     */
+    public static ScheduledExecutorService sharedScheduledExecutorService() {
+        if (sharedScheduledExecutor == null) {
+            synchronized (Async.class) {
+                if (sharedScheduledExecutor == null) {
+                    AtomicInteger nextThreadId = new AtomicInteger(0);
+                    sharedScheduledExecutor =
+                            Executors.newScheduledThreadPool(
+                                    Math.max(2, getCpuCount()),
+                                    runnable -> {
+                                        Thread thread =
+                                                new Thread(
+                                                        runnable,
+                                                        "abeyj-scheduler-"
+                                                                + nextThreadId.getAndIncrement());
+                                        thread.setDaemon(true);
+                                        return thread;
+                                    });
+                }
+            }
+        }
+        return sharedScheduledExecutor;
+    }
+
     /**
      * Shutdown as per {@link ExecutorService} Javadoc recommendation.
      *
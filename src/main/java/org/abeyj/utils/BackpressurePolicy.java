@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens to events that a subscriber of a push based {@link Flowable} is not ready
+ * to receive yet, such as new heads or logs arriving faster than they are processed.
+ *
+ * <p>The default, {@link #unbounded()}, buffers everything in memory. The other policies bound
+ * the memory held per subscriber by dropping events, failing the Flowable, keeping only the
+ * latest event, or writing the excess to a temporary file. A policy instance counts the events it
+ * dropped or spilled across every Flowable it was applied to.
+ */
+public class BackpressurePolicy {
+
+    /** What to do with a new event when the buffer of a bounded policy is full. */
+    public enum Overflow {
+        /** Discard the oldest buffered event to make room. */
+        DROP_OLDEST,
+        /** Discard the new event. */
+        DROP_LATEST,
+        /** Fail the Flowable with a MissingBackpressureException. */
+        ERROR
+    }
+
+    private enum Kind {
+        UNBOUNDED,
+        BOUNDED,
+        SPILL
+    }
+
+    private final Kind kind;
+    private final int capacity;
+    private final Overflow overflow;
+    private final File spillDirectory;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    private BackpressurePolicy(Kind kind, int capacity, Overflow overflow, File spillDirectory) {
+        this.kind = kind;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /** Buffer every event in memory until the subscriber requests it. */
+    public static BackpressurePolicy unbounded() {
+        return new BackpressurePolicy(Kind.UNBOUNDED, 0, null, null);
+    }
+
+    /**
+     * Buffer up to {@code capacity} events in memory.
+     *
+     * @param capacity maximum number of buffered events
+     * @param overflow what to do with an event arriving while the buffer is full
+     * @return the policy
+     */
+    public static BackpressurePolicy bounded(int capacity, Overflow overflow) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        return new BackpressurePolicy(Kind.BOUNDED, capacity, overflow, null);
+    }
+
+    /**
+     * Keep only the most recent event, for streams where each event supersedes the previous one,
+     * such as new heads.
+     *
+     * @return the policy
+     */
+    public static BackpressurePolicy latest() {
+        return bounded(1, Overflow.DROP_OLDEST);
+    }
+
+    /**
+     * Buffer up to {@code memoryCapacity} events in memory and append any further events to a
+     * temporary file, from which they are read back in order. Nothing is lost, at the cost of disk
+     * space while the subscriber is behind. Events are stored as JSON, so their type must
+     * round-trip through Jackson.
+     *
+     * @param memoryCapacity maximum number of events held in memory
+     * @param directory directory for the temporary file, or null for the default temporary
+     *     directory
+     * @return the policy
+     */
+    public static BackpressurePolicy spillToDisk(int memoryCapacity, File directory) {
+        if (memoryCapacity < 1) {
+            throw new IllegalArgumentException("Memory capacity must be at least 1");
+        }
+        return new BackpressurePolicy(Kind.SPILL, memoryCapacity, null, directory);
+    }
+
+    /**
+     * Apply the policy to a Flowable that emits without regard to downstream requests, such as
+     * one created with {@link io.reactivex.BackpressureStrategy#MISSING}.
+     *
+     * @param source Flowable to apply the policy to
+     * @param type type of the events, needed to read back spilled events
+     * @param <T> type of the events
+     * @return a Flowable that honours downstream requests
+     */
+    public <T> Flowable<T> apply(Flowable<T> source, Class<T> type) {
+        switch (kind) {
+            case BOUNDED:
+                return source.onBackpressureBuffer(
+                        capacity, droppedCount::incrementAndGet, toStrategy(overflow));
+            case SPILL:
+                return new SpillingFlowable<>(
+                        source, type, capacity, spillDirectory, spilledCount);
+            default:
+                return source.onBackpressureBuffer();
+        }
+    }
+
+    /** Number of events discarded because a buffer was full. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** Number of events written to disk because the in-memory buffer was full. */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    private static BackpressureOverflowStrategy toStrategy(Overflow overflow) {
+        switch (overflow) {
+            case DROP_OLDEST:
+                return BackpressureOverflowStrategy.DROP_OLDEST;
+            case DROP_LATEST:
+                return BackpressureOverflowStrategy.DROP_LATEST;
+            default:
+                return BackpressureOverflowStrategy.ERROR;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool with a fixed maximum number of threads and a bounded work queue.
+ *
+ * <p>When the queue is full the {@link OverflowPolicy} decides how the submitting thread is
+ * pushed back. The number of overflows is recorded and exposed alongside the queue depth and
+ * active thread count.
+ */
+public class BoundedExecutorService extends ThreadPoolExecutor {
+
+    /** What to do with a task submitted while the work queue is full. */
+    public enum OverflowPolicy {
+        /** Run the task on the submitting thread. */
+        CALLER_RUNS,
+        /** Block the submitting thread until there is room in the queue. */
+        BLOCK,
+        /** Reject the task with a {@link RejectedExecutionException}. */
+        REJECT
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public BoundedExecutorService(int maxThreads, int queueCapacity, OverflowPolicy policy) {
+        this(maxThreads, queueCapacity, policy, "abeyj-async");
+    }
+
+    public BoundedExecutorService(
+            int maxThreads, int queueCapacity, OverflowPolicy policy, String threadNamePrefix) {
+        super(
+                maxThreads,
+                maxThreads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory(threadNamePrefix));
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new OverflowHandler(policy));
+    }
+
+    /**
+     * Number of tasks waiting for a thread.
+     *
+     * @return current queue depth
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * Number of tasks that were submitted while the queue was full, regardless of how the
+     * overflow was handled.
+     *
+     * @return total overflow count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private static ThreadFactory namedThreadFactory(String threadNamePrefix) {
+        AtomicInteger nextThreadId = new AtomicInteger(0);
+        return runnable ->
+                new Thread(runnable, threadNamePrefix + "-" + nextThreadId.getAndIncrement());
+    }
+
+    private class OverflowHandler implements RejectedExecutionHandler {
+        private final OverflowPolicy policy;
+
+        OverflowHandler(OverflowPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+
+            rejectedCount.incrementAndGet();
+            switch (policy) {
+                case CALLER_RUNS:
+                    runnable.run();
+                    break;
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(
+                                "Interrupted while waiting for queue space", e);
+                    }
+                    break;
+                default:
+                    throw new RejectedExecutionException(
+                            String.format(
+                                    "Work queue is full (%d tasks queued)",
+                                    executor.getQueue().size()));
+            }
+        }
+    }
+}
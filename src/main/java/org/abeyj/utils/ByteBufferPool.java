@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of byte buffers of one fixed size, for code that needs many short lived buffers.
+ *
+ * <p>Borrowing a buffer saves allocating and zeroing it, which matters most for direct buffers:
+ * they are expensive to allocate and only freed by the garbage collector. At most {@code
+ * maxPooled} buffers are kept; buffers released beyond that are left to the garbage collector.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * Creates a pool of heap buffers.
+     *
+     * @param bufferSize capacity of every buffer, in bytes
+     * @param maxPooled maximum number of idle buffers kept in the pool
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, false);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param bufferSize capacity of every buffer, in bytes
+     * @param maxPooled maximum number of idle buffers kept in the pool
+     * @param direct whether to allocate direct buffers instead of heap buffers
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize < 1 || maxPooled < 0) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be positive and pool size must not be negative");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Borrow a cleared buffer, allocating a new one if the pool is empty.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return direct
+                    ? ByteBuffer.allocateDirect(bufferSize)
+                    : ByteBuffer.allocate(bufferSize);
+        }
+        pooledCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer must not be used after it was released.
+     *
+     * @param buffer buffer obtained from {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (pooledCount.incrementAndGet() > maxPooled) {
+            pooledCount.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /** Number of idle buffers in the pool. */
+    public int getPooledCount() {
+        return pooledCount.get();
+    }
+}
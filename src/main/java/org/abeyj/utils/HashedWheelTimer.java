@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer for large numbers of short tasks that are usually cancelled before they run, such as
+ * request timeouts.
+ *
+ * <p>Timeouts are kept in a ring of buckets, one per tick. Adding and cancelling a timeout takes
+ * constant time, and a cancelled timeout is unlinked straight away instead of lingering in a queue
+ * until its deadline. The price is precision: a task runs up to two ticks after its deadline.
+ *
+ * <p>Expired tasks run on the single timer thread, so they should be short and must not block.
+ */
+public class HashedWheelTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final AtomicInteger nextTimerId = new AtomicInteger(0);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final String threadName;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final long startNanos = System.nanoTime();
+    // The tick the timer thread processes next, only advanced while holding that tick's bucket
+    private volatile long nextTick = 0;
+
+    private volatile Thread worker;
+    private volatile boolean stopped = false;
+
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a timer.
+     *
+     * @param tickDuration time covered by one bucket
+     * @param unit unit of tickDuration
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.threadName = "abeyj-timer-" + nextTimerId.getAndIncrement();
+    }
+
+    /**
+     * Schedule a task to run once, after the given delay.
+     *
+     * @param task task to run on the timer thread
+     * @param delay delay before the task runs
+     * @param unit unit of delay
+     * @return handle used to cancel the task
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("Timer has been stopped");
+        }
+        ensureStarted();
+
+        long deadlineNanos = System.nanoTime() - startNanos + unit.toNanos(Math.max(delay, 0));
+        // Round up, so that a task never runs before its deadline
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+
+        Timeout timeout = new Timeout(task);
+        while (true) {
+            long tick = Math.max(deadlineTick, nextTick);
+            Bucket bucket = wheel[(int) (tick & mask)];
+            synchronized (bucket) {
+                // The timer thread may have moved past the chosen tick in the meantime
+                if (tick >= nextTick) {
+                    timeout.deadlineTick = tick;
+                    timeout.bucket = bucket;
+                    bucket.add(timeout);
+                    pendingCount.incrementAndGet();
+                    return timeout;
+                }
+            }
+        }
+    }
+
+    /** Number of tasks that are scheduled and have neither run nor been cancelled. */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /** Stop the timer thread. Tasks that have not run yet never will. */
+    public void stop() {
+        stopped = true;
+        Thread thread = worker;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void ensureStarted() {
+        if (worker == null) {
+            synchronized (this) {
+                if (worker == null) {
+                    Thread thread = new Thread(this::run, threadName);
+                    thread.setDaemon(true);
+                    thread.start();
+                    worker = thread;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        while (!stopped) {
+            long tick = nextTick;
+            long sleepNanos = (tick + 1) * tickNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            Bucket bucket = wheel[(int) (tick & mask)];
+            synchronized (bucket) {
+                bucket.expire(tick, expired);
+                nextTick = tick + 1;
+            }
+
+            for (Timeout timeout : expired) {
+                pendingCount.decrementAndGet();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Timer task failed", e);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /** Handle of a scheduled task. */
+    public static class Timeout {
+        private final Runnable task;
+
+        // Guarded by the monitor of the bucket holding the timeout, null once it ran or was
+        // cancelled
+        private volatile Bucket bucket;
+        private long deadlineTick;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Cancel the task if it has not run yet.
+         *
+         * @return true if the task was cancelled, false if it already ran or was cancelled
+         */
+        public boolean cancel() {
+            Bucket current = bucket;
+            if (current == null) {
+                return false;
+            }
+            synchronized (current) {
+                if (bucket != current) {
+                    return false;
+                }
+                current.cancel(this);
+            }
+            return true;
+        }
+
+        /** Whether the task is still waiting to run. */
+        public boolean isPending() {
+            return bucket != null;
+        }
+    }
+
+    private class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void cancel(Timeout timeout) {
+            unlink(timeout);
+            pendingCount.decrementAndGet();
+        }
+
+        private void unlink(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long tick, List<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadlineTick <= tick) {
+                    unlink(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+    }
+}
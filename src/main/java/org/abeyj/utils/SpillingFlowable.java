@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.abeyj.protocol.ObjectMapperFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flowable that buffers a bounded number of events in memory and appends the rest to a temporary
+ * file as JSON lines, reading them back in order once the subscriber catches up.
+ *
+ * @see BackpressurePolicy#spillToDisk(int, File)
+ */
+class SpillingFlowable<T> extends Flowable<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillingFlowable.class);
+
+    private final Flowable<T> source;
+    private final Class<T> type;
+    private final int memoryCapacity;
+    private final File directory;
+    private final AtomicLong spilledCount;
+
+    SpillingFlowable(
+            Flowable<T> source,
+            Class<T> type,
+            int memoryCapacity,
+            File directory,
+            AtomicLong spilledCount) {
+        this.source = source;
+        this.type = type;
+        this.memoryCapacity = memoryCapacity;
+        this.directory = directory;
+        this.spilledCount = spilledCount;
+    }
+
+    @Override
+    protected void subscribeActual(Subscriber<? super T> subscriber) {
+        source.subscribe(new SpillingSubscriber<>(subscriber, this));
+    }
+
+    private static class SpillingSubscriber<T> implements FlowableSubscriber<T>, Subscription {
+        private final Subscriber<? super T> downstream;
+        private final SpillingFlowable<T> parent;
+        private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // Guarded by this
+        private final ArrayDeque<T> memory = new ArrayDeque<>();
+        private File spillFile;
+        private BufferedWriter spillWriter;
+        private BufferedReader spillReader;
+        private long unreadSpilled;
+
+        private Subscription upstream;
+        private volatile boolean done;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+
+        SpillingSubscriber(Subscriber<? super T> downstream, SpillingFlowable<T> parent) {
+            this.downstream = downstream;
+            this.parent = parent;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            try {
+                offer(item);
+            } catch (IOException e) {
+                upstream.cancel();
+                onError(e);
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+            if (wip.getAndIncrement() == 0) {
+                clear();
+            }
+        }
+
+        private synchronized void offer(T item) throws IOException {
+            // Once anything is on disk, newer events must queue behind it to keep the order
+            if (memory.size() < parent.memoryCapacity && unreadSpilled == 0) {
+                memory.add(item);
+                return;
+            }
+
+            if (spillWriter == null) {
+                spillFile = File.createTempFile("abeyj-spill", ".jsonl", parent.directory);
+                spillFile.deleteOnExit();
+                spillWriter =
+                        new BufferedWriter(
+                                new OutputStreamWriter(
+                                        new FileOutputStream(spillFile),
+                                        StandardCharsets.UTF_8));
+            }
+            spillWriter.write(objectMapper.writeValueAsString(item));
+            spillWriter.newLine();
+            unreadSpilled++;
+            parent.spilledCount.incrementAndGet();
+        }
+
+        private synchronized T poll() throws IOException {
+            T item = memory.poll();
+            if (item != null || unreadSpilled == 0) {
+                return item;
+            }
+
+            if (spillReader == null) {
+                spillWriter.flush();
+                spillReader =
+                        new BufferedReader(
+                                new InputStreamReader(
+                                        new FileInputStream(spillFile), StandardCharsets.UTF_8));
+            } else {
+                spillWriter.flush();
+            }
+
+            item = objectMapper.readValue(spillReader.readLine(), parent.type);
+            if (--unreadSpilled == 0) {
+                // Caught up, start over with an empty file next time
+                closeSpillFile();
+            }
+            return item;
+        }
+
+        private synchronized boolean isEmpty() {
+            return memory.isEmpty() && unreadSpilled == 0;
+        }
+
+        private synchronized void clear() {
+            memory.clear();
+            unreadSpilled = 0;
+            closeSpillFile();
+        }
+
+        private void closeSpillFile() {
+            try {
+                if (spillWriter != null) {
+                    spillWriter.close();
+                }
+                if (spillReader != null) {
+                    spillReader.close();
+                }
+            } catch (IOException e) {
+                log.debug("Failed to close spill file", e);
+            }
+            if (spillFile != null && !spillFile.delete()) {
+                log.debug("Failed to delete spill file {}", spillFile);
+            }
+            spillWriter = null;
+            spillReader = null;
+            spillFile = null;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                long wanted = requested.get();
+                long emitted = 0;
+                while (emitted != wanted) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+
+                    T item;
+                    try {
+                        item = poll();
+                    } catch (IOException e) {
+                        upstream.cancel();
+                        clear();
+                        downstream.onError(e);
+                        return;
+                    }
+                    if (item == null) {
+                        break;
+                    }
+                    downstream.onNext(item);
+                    emitted++;
+                }
+
+                if (emitted != 0 && wanted != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                if (cancelled) {
+                    clear();
+                    return;
+                }
+                if (done && isEmpty()) {
+                    clear();
+                    Throwable throwable = error;
+                    if (throwable != null) {
+                        downstream.onError(throwable);
+                    } else {
+                        downstream.onComplete();
+                    }
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Web3 Labs Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.abeyj.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe least-recently-used cache bounded by both the number of entries and the total
+ * weight of its values. The weight of a value is computed once, when it is inserted.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+public class WeightedLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalWeight = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public WeightedLruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Insert a value, evicting the least recently used entries until the cache is within its
+     * bounds again. A value heavier than the whole cache is not stored.
+     *
+     * @param key cache key
+     * @param value value to cache, must not be null
+     */
+    public void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxWeight) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry<V> previous = entries.put(key, new Entry<>(value, weight));
+            if (previous != null) {
+                totalWeight -= previous.weight;
+            }
+            totalWeight += weight;
+
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+                totalWeight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}